@@ -0,0 +1,184 @@
+package steiner;
+
+import java.util.Arrays;
+
+/**
+ * Monotone bucket queue of Dial for small integer keys. Keys pushed must not be smaller than the last key
+ * returned by peekKey or poll, which holds for Dijkstra searches on non-negative weights.
+ * The buckets form a circular array covering the keys from the current minimum up to the largest key pushed,
+ * it is doubled whenever a key falls outside. Decreased vertices leave stale entries behind, which are
+ * skipped when their bucket is reached. The vertices of the minimum bucket are sorted once, so ties are
+ * broken by the smaller vertex as in IndexedHeap.
+ */
+public class BucketQueue implements VertexQueue {
+	private static final int NONE = -1;
+
+	private final int[] key;
+	private final boolean[] inQueue;
+	private int size;
+
+	// Buckets are singly linked lists of entries, freed entries are reused
+	private int[] head;
+	private int[] entryVertex;
+	private int[] entryNext;
+	private int entryCount;
+	private int freeEntry;
+
+	// Sorted vertices of the minimum bucket
+	private int[] drain;
+	private int drainFrom;
+	private int drainTo;
+	private int current;
+
+	public BucketQueue(int capacity) {
+		key = new int[capacity];
+		inQueue = new boolean[capacity];
+		size = 0;
+		head = new int[16];
+		Arrays.fill(head, NONE);
+		entryVertex = new int[16];
+		entryNext = new int[16];
+		entryCount = 0;
+		freeEntry = NONE;
+		drain = new int[16];
+		drainFrom = 0;
+		drainTo = 0;
+		current = 0;
+	}
+
+	public boolean isEmpty() {
+		return size == 0;
+	}
+
+	public void push(int i, int k) {
+		if (inQueue[i] && key[i] <= k) return;
+		if (k < current) throw new IllegalArgumentException("Key " + k + " is smaller than the current minimum " + current);
+		if (!inQueue[i]) size++;
+		inQueue[i] = true;
+		key[i] = k;
+		if (drainTo > 0 && k == current) {
+			// A zero weight edge, the vertex joins the bucket being drained at its sorted position
+			if (drainTo == drain.length) drain = Arrays.copyOf(drain, 2 * drain.length);
+			int p = drainTo++;
+			while(p > drainFrom && drain[p - 1] > i) {
+				drain[p] = drain[p - 1];
+				p--;
+			}
+			drain[p] = i;
+			return;
+		}
+		while((long) k - current >= head.length) grow();
+		addEntry(k & (head.length - 1), i);
+	}
+
+	public int peekKey() {
+		advance();
+		return current;
+	}
+
+	public int poll() {
+		advance();
+		int i = drain[drainFrom++];
+		inQueue[i] = false;
+		size--;
+		return i;
+	}
+
+	/**
+	 * Makes sure the next vertex of the drained bucket is live, moving on to the next non-empty bucket if needed
+	 */
+	private void advance() {
+		if (size == 0) throw new IllegalStateException("The queue is empty");
+		while(drainFrom < drainTo && (!inQueue[drain[drainFrom]] || key[drain[drainFrom]] != current)) drainFrom++;
+		if (drainFrom < drainTo) return;
+		int k = current;
+		if (drainTo > 0) k++;
+		drainFrom = 0;
+		drainTo = 0;
+		while(true) {
+			int b = k & (head.length - 1);
+			int e = head[b];
+			head[b] = NONE;
+			while(e != NONE) {
+				int next = entryNext[e];
+				int i = entryVertex[e];
+				// The buckets cover less than one lap of keys, so any other entry is stale
+				if (inQueue[i] && key[i] == k) {
+					if (drainTo == drain.length) drain = Arrays.copyOf(drain, 2 * drain.length);
+					drain[drainTo++] = i;
+				}
+				entryNext[e] = freeEntry;
+				freeEntry = e;
+				e = next;
+			}
+			if (drainTo > 0) break;
+			k++;
+		}
+		Arrays.sort(drain, 0, drainTo);
+		current = k;
+	}
+
+	public void clear() {
+		for(int b = 0; b < head.length; b++) {
+			int e = head[b];
+			while(e != NONE) {
+				int next = entryNext[e];
+				inQueue[entryVertex[e]] = false;
+				entryNext[e] = freeEntry;
+				freeEntry = e;
+				e = next;
+			}
+			head[b] = NONE;
+		}
+		for(int p = drainFrom; p < drainTo; p++) {
+			inQueue[drain[p]] = false;
+		}
+		drainFrom = 0;
+		drainTo = 0;
+		size = 0;
+		current = 0;
+	}
+
+	private void addEntry(int b, int i) {
+		int e;
+		if (freeEntry != NONE) {
+			e = freeEntry;
+			freeEntry = entryNext[e];
+		}
+		else {
+			if (entryCount == entryVertex.length) {
+				entryVertex = Arrays.copyOf(entryVertex, 2 * entryCount);
+				entryNext = Arrays.copyOf(entryNext, 2 * entryCount);
+			}
+			e = entryCount++;
+		}
+		entryVertex[e] = i;
+		entryNext[e] = head[b];
+		head[b] = e;
+	}
+
+	/**
+	 * Doubles the number of buckets and redistributes the live entries, stale ones are freed
+	 */
+	private void grow() {
+		int[] oldHead = head;
+		head = new int[2 * oldHead.length];
+		Arrays.fill(head, NONE);
+		for(int b = 0; b < oldHead.length; b++) {
+			int e = oldHead[b];
+			while(e != NONE) {
+				int next = entryNext[e];
+				int i = entryVertex[e];
+				if (inQueue[i] && (key[i] & (oldHead.length - 1)) == b) {
+					entryNext[e] = head[key[i] & (head.length - 1)];
+					head[key[i] & (head.length - 1)] = e;
+				}
+				else {
+					entryNext[e] = freeEntry;
+					freeEntry = e;
+				}
+				e = next;
+			}
+		}
+	}
+}
@@ -0,0 +1,159 @@
+package steiner;
+
+import java.util.Arrays;
+import java.util.IdentityHashMap;
+import java.util.Map;
+
+/**
+ * Immutable compressed sparse row view of a SteinerGraph for the phases that only read the graph.
+ * The vertices are numbered 0..size()-1 in increasing order of their identifiers, so the vertices of a compact
+ * graph keep their numbers. The neighbours of vertex index u are at positions start(u)..end(u)-1, every position
+ * holds the index of the neighbour, the weight and a reference to the edge, which is the same from both endpoints.
+ * Nothing is written after construction, so a view can be shared by concurrent searches without copying.
+ * The view does not follow later changes of the graph.
+ */
+public final class CSRGraph {
+	private final int n;
+	private final int[] vertexToIndex;
+	private final int[] indexToVertex;
+	private final int[] offsets;
+	private final int[] targets;
+	private final int[] weights;
+	private final int[] edgeRef;
+	private final EdgePath[] paths;
+
+	/**
+	 * @param steinerGraph graph to be viewed, the neighbours of every vertex are kept in their order
+	 */
+	public CSRGraph(SteinerGraph steinerGraph) {
+		n = steinerGraph.vertices.size();
+		int capacity = steinerGraph.vertexCount;
+		for(Integer v : steinerGraph.vertices.keySet()) {
+			capacity = Math.max(capacity, v + 1);
+		}
+		vertexToIndex = new int[capacity];
+		Arrays.fill(vertexToIndex, -1);
+		indexToVertex = new int[n];
+		int i = 0;
+		for(int v = 0; v < capacity; v++) {
+			if (!steinerGraph.vertices.containsKey(v)) continue;
+			vertexToIndex[v] = i;
+			indexToVertex[i++] = v;
+		}
+		offsets = new int[n + 1];
+		for(int u = 0; u < n; u++) {
+			offsets[u + 1] = offsets[u] + steinerGraph.vertices.get(indexToVertex[u]).neighbours.size();
+		}
+		targets = new int[offsets[n]];
+		weights = new int[offsets[n]];
+		edgeRef = new int[offsets[n]];
+		paths = new EdgePath[offsets[n] / 2];
+		Map<SteinerGraphEdge, Integer> refs = new IdentityHashMap<>();
+		for(int u = 0; u < n; u++) {
+			int k = offsets[u];
+			for(Integer neighbour : steinerGraph.vertices.get(indexToVertex[u]).neighbours) {
+				SteinerGraphEdge e = steinerGraph.edges.get(new SortedPair(indexToVertex[u], neighbour));
+				Integer ref = refs.get(e);
+				if (ref == null) {
+					ref = refs.size();
+					refs.put(e, ref);
+					paths[ref] = e.getID();
+				}
+				targets[k] = vertexToIndex[neighbour];
+				weights[k] = e.getWeight();
+				edgeRef[k++] = ref;
+			}
+		}
+	}
+
+	/**
+	 * @return number of vertices
+	 */
+	public int size() {
+		return n;
+	}
+
+	/**
+	 * @return number of edges, every edge is stored once at each endpoint
+	 */
+	public int getEdgeCount() {
+		return paths.length;
+	}
+
+	/**
+	 * @param vertex identifier of a vertex of the graph
+	 * @return index of the vertex, -1 if it is not in the graph
+	 */
+	public int getIndex(int vertex) {
+		return vertex >= 0 && vertex < vertexToIndex.length ? vertexToIndex[vertex] : -1;
+	}
+
+	/**
+	 * @param index index of a vertex
+	 * @return identifier of the vertex in the graph
+	 */
+	public int getVertex(int index) {
+		return indexToVertex[index];
+	}
+
+	/**
+	 * @return first position of the neighbours of a vertex index
+	 */
+	public int start(int u) {
+		return offsets[u];
+	}
+
+	/**
+	 * @return position after the last neighbour of a vertex index
+	 */
+	public int end(int u) {
+		return offsets[u + 1];
+	}
+
+	/**
+	 * @return index of the neighbour at a position
+	 */
+	public int target(int k) {
+		return targets[k];
+	}
+
+	/**
+	 * @return weight of the edge at a position
+	 */
+	public int weight(int k) {
+		return weights[k];
+	}
+
+	/**
+	 * @return reference of the edge at a position, 0..getEdgeCount()-1
+	 */
+	public int edgeRef(int k) {
+		return edgeRef[k];
+	}
+
+	/**
+	 * @param ref reference of an edge
+	 * @return identifiers of the input edges of the path represented by the edge
+	 */
+	public EdgePath getPath(int ref) {
+		return paths[ref];
+	}
+
+	/**
+	 * Finds an edge by scanning the neighbours of its endpoint of smaller degree
+	 * @param u index of an endpoint
+	 * @param v index of the other endpoint
+	 * @return reference of the edge, -1 if the vertices are not adjacent
+	 */
+	public int findEdgeRef(int u, int v) {
+		if (offsets[u + 1] - offsets[u] > offsets[v + 1] - offsets[v]) {
+			int w = u;
+			u = v;
+			v = w;
+		}
+		for(int k = offsets[u]; k < offsets[u + 1]; k++) {
+			if (targets[k] == v) return edgeRef[k];
+		}
+		return -1;
+	}
+}
@@ -0,0 +1,58 @@
+package steiner;
+
+/**
+ * Contraction of one star by a kernel. Edges are given by their endpoints in the graph before the contraction.
+ */
+public class ContractionEvent {
+	public final int step;
+	public final int center;
+	public final int[] starts;
+	public final int[] ends;
+	public final double ratio;
+	public final int newTerminal;
+
+	/**
+	 * @param step index of the snapshot created by the step, the stars of a batch share it
+	 * @param center center of the star
+	 * @param starts first endpoints of the star edges
+	 * @param ends second endpoints of the star edges
+	 * @param ratio ratio of the star
+	 * @param newTerminal terminal created by the contraction
+	 */
+	public ContractionEvent(int step, int center, int[] starts, int[] ends, double ratio, int newTerminal) {
+		this.step = step;
+		this.center = center;
+		this.starts = starts;
+		this.ends = ends;
+		this.ratio = ratio;
+		this.newTerminal = newTerminal;
+	}
+
+	/**
+	 * @return the description printed with -long
+	 */
+	public String toString() {
+		StringBuilder sb = new StringBuilder();
+		sb.append("Contraction: #" + step);
+		sb.append("\nStar edges: ");
+		for(int i = 0; i < starts.length; i++) {
+			sb.append("{" + starts[i] + "," + ends[i] + "} ");
+		}
+		sb.append("\nStar ratio: " + ratio + "\nNew Terminal: #" + newTerminal + "\n");
+		return sb.toString();
+	}
+
+	/**
+	 * @return the event as a single line JSON object
+	 */
+	public String toJSON() {
+		StringBuilder sb = new StringBuilder();
+		sb.append("{\"step\":" + step + ",\"center\":" + center + ",\"edges\":[");
+		for(int i = 0; i < starts.length; i++) {
+			if (i > 0) sb.append(',');
+			sb.append("[" + starts[i] + "," + ends[i] + "]");
+		}
+		sb.append("],\"ratio\":" + ratio + ",\"newTerminal\":" + newTerminal + "}");
+		return sb.toString();
+	}
+}
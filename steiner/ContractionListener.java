@@ -0,0 +1,13 @@
+package steiner;
+
+/**
+ * Receives the contractions of a kernel in the order they are made
+ */
+public interface ContractionListener {
+
+	/**
+	 * Called after a star is selected, before the step it belongs to is contracted
+	 * @param event the contraction
+	 */
+	void contracted(ContractionEvent event);
+}
@@ -0,0 +1,117 @@
+package steiner;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * Replayable record of the contractions of a kernel. For every step the metric closure edges
+ * added before it and the endpoints of the edges of its stars are stored, a step contracts one star or
+ * a batch of disjoint stars. Snapshot i, the graph after the first i steps, is rebuilt on demand by
+ * replaying the log from the closest earlier checkpoint.
+ * The numbers of terminals and vertices of every snapshot are kept so they can be listed without rebuilding.
+ */
+public class ContractionLog {
+	public static final int CHECKPOINT_INTERVAL = 16;
+
+	private final List<List<SteinerGraphEdge>> closureEdges;
+	private final List<List<List<SortedPair>>> stars;
+	private final TreeMap<Integer, SteinerGraph> checkpoints;
+	private List<SteinerGraphEdge> pending;
+	private int[] terminalCounts;
+	private int[] vertexCounts;
+	private int size;
+
+	/**
+	 * @param steinerGraph graph before the first contraction, it becomes snapshot 0
+	 */
+	public ContractionLog(SteinerGraph steinerGraph) {
+		closureEdges = new ArrayList<>();
+		stars = new ArrayList<>();
+		checkpoints = new TreeMap<>();
+		pending = new ArrayList<>();
+		terminalCounts = new int[16];
+		vertexCounts = new int[16];
+		size = 0;
+		record(steinerGraph);
+	}
+
+	/**
+	 * Records a closure edge that changed the graph, it is replayed before the next contraction
+	 */
+	public void addEdge(Integer v1, Integer v2, Integer weight, List<Integer> id) {
+		pending.add(new SteinerGraphEdge(v1, v2, weight, id));
+	}
+
+	/**
+	 * Records a step
+	 * @param batch edges of the stars contracted in this order
+	 * @param steinerGraph graph after the contractions
+	 */
+	public void addContraction(List<List<SteinerGraphEdge>> batch, SteinerGraph steinerGraph) {
+		List<List<SortedPair>> step = new ArrayList<>(batch.size());
+		for(List<SteinerGraphEdge> starEdges : batch) {
+			List<SortedPair> star = new ArrayList<>(starEdges.size());
+			for(SteinerGraphEdge e : starEdges) {
+				star.add(new SortedPair(e.getStart(), e.getEnd()));
+			}
+			step.add(star);
+		}
+		stars.add(step);
+		closureEdges.add(pending);
+		pending = new ArrayList<>();
+		record(steinerGraph);
+	}
+
+	private void record(SteinerGraph steinerGraph) {
+		if (size == terminalCounts.length) {
+			terminalCounts = Arrays.copyOf(terminalCounts, 2 * size);
+			vertexCounts = Arrays.copyOf(vertexCounts, 2 * size);
+		}
+		terminalCounts[size] = steinerGraph.terminals.size();
+		vertexCounts[size] = steinerGraph.vertices.size();
+		if (size % CHECKPOINT_INTERVAL == 0) checkpoints.put(size, steinerGraph.snapshot());
+		size++;
+	}
+
+	/**
+	 * @return number of snapshots, one more than the number of steps
+	 */
+	public int size() {
+		return size;
+	}
+
+	public int getTerminalCount(int i) {
+		return terminalCounts[i];
+	}
+
+	public int getVertexCount(int i) {
+		return vertexCounts[i];
+	}
+
+	/**
+	 * Rebuilds a snapshot, at most CHECKPOINT_INTERVAL - 1 steps are replayed
+	 * @param i number of steps
+	 * @return graph after the first i steps, owned by the caller
+	 */
+	public SteinerGraph get(int i) {
+		if (i < 0 || i >= size) throw new IndexOutOfBoundsException("Snapshot " + i + " of " + size);
+		Map.Entry<Integer, SteinerGraph> checkpoint = checkpoints.floorEntry(i);
+		SteinerGraph steinerGraph = checkpoint.getValue().snapshot();
+		for(int step = checkpoint.getKey(); step < i; step++) {
+			for(SteinerGraphEdge e : closureEdges.get(step)) {
+				steinerGraph.addEdge(e.getStart(), e.getEnd(), e.getWeight(), e.getID());
+			}
+			for(List<SortedPair> star : stars.get(step)) {
+				List<SteinerGraphEdge> starEdges = new ArrayList<>();
+				for(SortedPair p : star) {
+					starEdges.add(steinerGraph.edges.get(p));
+				}
+				steinerGraph.contractStar(starEdges);
+			}
+		}
+		return steinerGraph;
+	}
+}
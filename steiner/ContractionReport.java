@@ -0,0 +1,26 @@
+package steiner;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Keeps the contraction events of a kernel, the text is only rendered when asked for
+ */
+public class ContractionReport implements ContractionListener {
+	private final List<ContractionEvent> events = new ArrayList<>();
+
+	public void contracted(ContractionEvent event) {
+		events.add(event);
+	}
+
+	/**
+	 * @return one paragraph per contraction
+	 */
+	public String toString() {
+		StringBuilder sb = new StringBuilder();
+		for(ContractionEvent event : events) {
+			sb.append(event).append('\n');
+		}
+		return sb.toString();
+	}
+}
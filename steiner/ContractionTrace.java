@@ -0,0 +1,37 @@
+package steiner;
+
+import java.io.BufferedWriter;
+import java.io.Closeable;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.io.Writer;
+
+/**
+ * Writes the contraction events of a kernel as newline delimited JSON, one object per line
+ */
+public class ContractionTrace implements ContractionListener, Closeable {
+	private final Writer writer;
+
+	public ContractionTrace(String path) throws IOException {
+		this(new BufferedWriter(new FileWriter(path)));
+	}
+
+	public ContractionTrace(Writer writer) {
+		this.writer = writer;
+	}
+
+	public void contracted(ContractionEvent event) {
+		try {
+			writer.write(event.toJSON());
+			writer.write('\n');
+		}
+		catch (IOException e) {
+			throw new UncheckedIOException(e);
+		}
+	}
+
+	public void close() throws IOException {
+		writer.close();
+	}
+}
@@ -1,32 +1,290 @@
 package steiner;
 
-import java.util.Comparator;
-import java.util.HashMap;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
 import java.util.List;
 import java.util.Map;
-import java.util.PriorityQueue;
-import java.util.Queue;
 
 /**
  * A Dijkstra run is frozen and its state is saved in an instance of steiner.DijkstraCache.
+ * Distances are kept in an array indexed by vertex, the queue is an indexed heap with decrease-key.
+ * Paths are stored as predecessors together with the edge identifiers of the last step, the full list of
+ * edge identifiers is only built by getPathIDs. The kernels may read the edges of the metric closure from the
+ * distances instead of adding them to the graph.
  * @author Kemeny Tamas
  */
 public class DijkstraCache {
+	private static final int UNKNOWN = -1;
+	private static final int DROPPED = -2;
+
 	public Integer id;
-	public Map<Integer, Integer> dist;
-	public Map<Integer, List<Integer>> pathID;
-	public Queue<Integer> queue;
-	public DijkstraCache(Integer i) {
+	public int[] dist;
+	public int[] pred;
+	public List<List<Integer>> predID;
+	public VertexQueue queue;
+	/** Vertices settled by the last call of resume, only recorded if not null */
+	public List<Integer> settled;
+
+	/**
+	 * @param i source of the search
+	 * @param capacity upper bound on the vertex identifiers reached by the search
+	 * @param buckets use a bucket queue instead of a binary heap, see preferBuckets
+	 */
+	public DijkstraCache(Integer i, int capacity, boolean buckets) {
 		id = i;
-		dist = new HashMap<>();
-		pathID = new HashMap<>();
-		queue = new PriorityQueue<Integer>(new Comparator<Integer>() {
-			public int compare(Integer i, Integer j) {
-				if (dist.get(i)-dist.get(j)!=0) {
-					return dist.get(i)-dist.get(j);
+		dist = new int[capacity];
+		Arrays.fill(dist, Integer.MAX_VALUE);
+		pred = new int[capacity];
+		Arrays.fill(pred, -1);
+		predID = new ArrayList<>(Collections.nCopies(capacity, (List<Integer>) null));
+		queue = buckets ? new BucketQueue(capacity) : new IndexedHeap(capacity);
+		dist[i] = 0;
+		queue.push(i, 0);
+	}
+
+	/**
+	 * A bucket queue scans every distance up to the largest one reached, about n * maxWeight buckets,
+	 * while a binary heap costs about m log n
+	 * @param steinerGraph graph to be searched
+	 * @return true if the bucket queue is expected to be faster
+	 */
+	public static boolean preferBuckets(SteinerGraph steinerGraph) {
+		long n = steinerGraph.vertices.size();
+		long m = steinerGraph.edges.size();
+		long maxWeight = 0;
+		for(SteinerGraphEdge e : steinerGraph.edges.values()) {
+			maxWeight = Math.max(maxWeight, e.getWeight());
+		}
+		long log = 64 - Long.numberOfLeadingZeros(n);
+		return n * maxWeight <= m * log;
+	}
+
+	/**
+	 * Resumes the search until every vertex closer to the source than the threshold is settled.
+	 * The search is frozen again at the first vertex whose distance reaches the threshold.
+	 * @param steinerGraph graph searched
+	 * @param threshold distance at which the search is frozen
+	 */
+	public void resume(SteinerGraph steinerGraph, int threshold) {
+		if (settled != null) settled.clear();
+		while(!queue.isEmpty() && queue.peekKey() < threshold) {
+			int u = queue.poll();
+			// A vertex contracted while it was queued has no edges left to relax
+			SteinerGraphVertex vertex = steinerGraph.vertices.get(u);
+			if (vertex == null) continue;
+			if (settled != null) settled.add(u);
+			for(Integer v : vertex.neighbours) {
+				SteinerGraphEdge newEdge = steinerGraph.edges.get(new SortedPair(u, v));
+				int newDist = dist[u] + newEdge.getWeight();
+				if (newDist < dist[v]) {
+					dist[v] = newDist;
+					pred[v] = u;
+					predID.set(v, newEdge.getID());
+					queue.push(v, newDist);
+				}
+			}
+		}
+	}
+
+	/**
+	 * Resumes the search on a read-only view of the graph, as resume does on the graph itself.
+	 * Searches sharing a view may run concurrently.
+	 * @param graph view of the graph searched
+	 * @param threshold distance at which the search is frozen
+	 */
+	public void resume(CSRGraph graph, int threshold) {
+		if (settled != null) settled.clear();
+		while(!queue.isEmpty() && queue.peekKey() < threshold) {
+			int u = queue.poll();
+			int index = graph.getIndex(u);
+			if (index == -1) continue;
+			if (settled != null) settled.add(u);
+			for(int k = graph.start(index); k < graph.end(index); k++) {
+				int v = graph.getVertex(graph.target(k));
+				int newDist = dist[u] + graph.weight(k);
+				if (newDist < dist[v]) {
+					dist[v] = newDist;
+					pred[v] = u;
+					predID.set(v, graph.getPath(graph.edgeRef(k)));
+					queue.push(v, newDist);
+				}
+			}
+		}
+	}
+
+	/**
+	 * Turns this search into the search of a terminal created by contracting its source together with the sources
+	 * of other searches, reusing its arrays. All searches must have been resumed up to the same threshold.
+	 * Every vertex first takes the smallest distance found by these searches with its predecessor in that search,
+	 * ties go to the earlier search. A path through the contracted vertices is then cut after the last one and
+	 * continues from the new terminal along the edge moved to it, so the distance can only drop. A path through a
+	 * vertex removed by another contraction is dropped, its edges may not have been moved along.
+	 * Only the new terminal, the vertices whose distance dropped, the vertices no search has settled yet and the
+	 * neighbours of dropped vertices and of the other new terminals are queued again. Every other vertex was
+	 * settled and its edges to the rest of the graph did not get longer.
+	 * @param i source of the search, the new terminal
+	 * @param others searches of the other contracted terminals
+	 * @param image new terminal of every vertex removed by the step
+	 * @param newTerminals terminals created by the contractions of the same step
+	 * @param steinerGraph graph after the contraction
+	 * @param threshold distance up to which all searches were resumed
+	 * @param base scratch array at least as long as the arrays of the search
+	 * @return vertices whose path was dropped or whose distance dropped
+	 */
+	public List<Integer> merge(Integer i, List<DijkstraCache> others, Map<Integer, Integer> image, List<Integer> newTerminals, SteinerGraph steinerGraph, int threshold, int[] base) {
+		for(DijkstraCache other : others) {
+			for(int v = 0; v < dist.length; v++) {
+				if (other.dist[v] < dist[v]) {
+					dist[v] = other.dist[v];
+					pred[v] = other.pred[v];
+					predID.set(v, other.predID.get(v));
 				}
-				return i-j;
 			}
-		});
+		}
+
+		// base[v] is the distance of the last contracted vertex on the path to v
+		Arrays.fill(base, UNKNOWN);
+		for(Map.Entry<Integer, Integer> e : image.entrySet()) {
+			int c = e.getKey();
+			if (e.getValue().equals(i) && dist[c] < Integer.MAX_VALUE) base[c] = dist[c];
+		}
+		id = i;
+		dist[i] = 0;
+		pred[i] = -1;
+		base[i] = 0;
+		return cut(image, newTerminals, steinerGraph, threshold, base);
+	}
+
+	/**
+	 * Moves the paths through vertices removed by a step of contractions, which the searches of the contracted
+	 * terminals were merged over, to the new terminals. Only used when the closure edges are read from the
+	 * searches, such a path holds edges that were moved or removed. Each new terminal is reached from the closest
+	 * predecessor of its removed vertices whose path avoids the removed vertices, along the edge moved to it.
+	 * A path is then cut after the last removed vertex as in merge, and dropped if that vertex was closer than its
+	 * new terminal or if the new terminal was not reached. The vertices whose path was dropped and the new
+	 * terminals not reached have their neighbours queued again, so that resume finds them paths of the contracted
+	 * graph. The other settled vertices keep their distance unless it dropped.
+	 * @param image new terminal of every vertex removed by the step
+	 * @param newTerminals terminals created by the step
+	 * @param steinerGraph graph after the step
+	 * @param threshold distance up to which the search was resumed
+	 * @param base scratch array at least as long as the arrays of the search
+	 * @return vertices whose path was dropped or whose distance dropped, null if the search reached no removed
+	 * vertex and is left as it was
+	 */
+	public List<Integer> reroute(Map<Integer, Integer> image, List<Integer> newTerminals, SteinerGraph steinerGraph, int threshold, int[] base) {
+		boolean reached = false;
+		for(Integer v : image.keySet()) {
+			if (dist[v] < Integer.MAX_VALUE) reached = true;
+		}
+		if (!reached) return null;
+		// base[v] is 0 if the path to v avoids the removed vertices
+		Arrays.fill(base, UNKNOWN);
+		base[id] = 0;
+		walkPaths(base, steinerGraph);
+		for(Map.Entry<Integer, Integer> e : image.entrySet()) {
+			int c = e.getKey();
+			int t = e.getValue();
+			int p = pred[c];
+			if (dist[c] == Integer.MAX_VALUE || !steinerGraph.vertices.containsKey(p) || base[p] != 0) continue;
+			SteinerGraphEdge edge = steinerGraph.edges.get(new SortedPair(p, t));
+			int d = dist[p] + edge.getWeight();
+			if (d < dist[t] || d == dist[t] && p < pred[t]) {
+				dist[t] = d;
+				pred[t] = p;
+				predID.set(t, edge.getID());
+			}
+		}
+
+		// base[v] is the distance of the last removed vertex on the path to v from its new terminal
+		Arrays.fill(base, UNKNOWN);
+		base[id] = 0;
+		for(Map.Entry<Integer, Integer> e : image.entrySet()) {
+			int c = e.getKey();
+			int t = e.getValue();
+			if (dist[c] < Integer.MAX_VALUE && dist[t] <= dist[c]) base[c] = dist[c] - dist[t];
+		}
+		for(Integer t : newTerminals) {
+			if (dist[t] < Integer.MAX_VALUE) base[t] = 0;
+		}
+		return cut(image, newTerminals, steinerGraph, threshold, base);
+	}
+
+	/**
+	 * Subtracts base from every distance, rewires the vertices after the last removed vertex on their path to its
+	 * new terminal, drops the paths given DROPPED and queues the search again as described in merge
+	 * @param base distances to subtract, set for the removed vertices and the vertices where the paths stop
+	 * @return vertices whose path was dropped or whose distance dropped
+	 */
+	private List<Integer> cut(Map<Integer, Integer> image, List<Integer> newTerminals, SteinerGraph steinerGraph, int threshold, int[] base) {
+		walkPaths(base, steinerGraph);
+
+		List<Integer> changed = new ArrayList<>();
+		queue.clear();
+		for(Integer t : newTerminals) {
+			if (dist[t] < Integer.MAX_VALUE) queue.push(t, dist[t]);
+		}
+		for(Integer v : steinerGraph.vertices.keySet()) {
+			if (v.equals(id) || dist[v] == Integer.MAX_VALUE || newTerminals.contains(v)) continue;
+			if (base[v] == DROPPED) {
+				dist[v] = Integer.MAX_VALUE;
+				pred[v] = -1;
+				predID.set(v, null);
+				changed.add(v);
+				continue;
+			}
+			int old = dist[v];
+			dist[v] -= base[v];
+			if (!steinerGraph.vertices.containsKey(pred[v])) {
+				Integer t = image.get(pred[v]);
+				SteinerGraphEdge e = steinerGraph.edges.get(new SortedPair(t, v));
+				dist[v] = dist[t] + e.getWeight();
+				pred[v] = t;
+				predID.set(v, e.getID());
+			}
+			if (dist[v] < old) changed.add(v);
+			if (dist[v] < old || old >= threshold) queue.push(v, dist[v]);
+		}
+		for(Integer v : steinerGraph.vertices.keySet()) {
+			if (base[v] != DROPPED && !(newTerminals.contains(v) && dist[v] == Integer.MAX_VALUE)) continue;
+			for(Integer u : steinerGraph.vertices.get(v).neighbours) {
+				if (dist[u] < Integer.MAX_VALUE) queue.push(u, dist[u]);
+			}
+		}
+		return changed;
+	}
+
+	/**
+	 * Fills in base for every vertex of the graph with a known distance, with the value of the closest vertex
+	 * on its path that already has one. A path that reaches a vertex no longer in the graph first gives DROPPED.
+	 * Every path is walked up to the first vertex already known, then once more to record the result.
+	 * @param base UNKNOWN except for the vertices where the paths stop
+	 * @param steinerGraph graph after the contraction
+	 */
+	private void walkPaths(int[] base, SteinerGraph steinerGraph) {
+		for(Integer v : steinerGraph.vertices.keySet()) {
+			if (dist[v] == Integer.MAX_VALUE || base[v] != UNKNOWN) continue;
+			int u = v;
+			while(base[u] == UNKNOWN && steinerGraph.vertices.containsKey(u)) u = pred[u];
+			int b = base[u] == UNKNOWN ? DROPPED : base[u];
+			for(int x = v; x != u; x = pred[x]) {
+				base[x] = b;
+			}
+		}
+	}
+
+	/**
+	 * Collects the identifiers of the input edges along the path found to a vertex
+	 * @param v reached vertex
+	 * @return edge identifiers in order from the source, sharing the identifiers of the edges of the path
+	 */
+	public EdgePath getPathIDs(int v) {
+		List<List<Integer>> steps = new ArrayList<>();
+		for(int u = v; u != id; u = pred[u]) {
+			steps.add(predID.get(u));
+		}
+		Collections.reverse(steps);
+		return EdgePath.concat(steps);
 	}
 }
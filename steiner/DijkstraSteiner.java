@@ -0,0 +1,250 @@
+package steiner;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * Implementation of the label-setting algorithm solving Steiner Tree problem by Hougardy, Silvanus, Vygen '17.
+ * Labels (v, I) are settled in the order of their weight plus a lower bound on the cost of connecting
+ * the remaining terminals, so most of the table is never reached.
+ */
+public class DijkstraSteiner extends ExactSolver {
+
+	private int n;
+	private int fullMask;
+	private int root;
+	private int[] terminalColumns;
+	private int[][] terminalDist;
+	private int[] mstWeight;
+
+	public String getName() {
+		return "Dijkstra-Steiner";
+	}
+
+	/**
+	 * Computes the exact Steiner tree using the Dijkstra-Steiner algorithm
+	 * @param steinerGraph compact instance to be solved
+	 */
+	protected void solveCompact(SteinerGraph steinerGraph) {
+
+		// Vertices are compact, so they are used as columns directly and keep their numbers in the view
+		n = steinerGraph.vertices.size();
+		CSRGraph graph = new CSRGraph(steinerGraph);
+
+		// The last terminal is the root, all other terminals are mapped to bits
+		List<Integer> terminals = new ArrayList<Integer>(steinerGraph.terminals);
+		if (terminals.size() < 2) {
+			optimalTreeWeight = 0;
+			steinerEdges = new ArrayList<>();
+			return;
+		}
+		if (terminals.size() > 31) {
+			throw new IllegalArgumentException("Dijkstra-Steiner supports at most 31 terminals, got " + terminals.size());
+		}
+		fullMask = (1 << (terminals.size() - 1)) - 1;
+		terminalColumns = new int[terminals.size()];
+		for(int i = 0; i < terminals.size(); i++) {
+			terminalColumns[i] = terminals.get(i);
+		}
+		root = terminalColumns[terminals.size() - 1];
+
+		// Distances from every terminal, used by the lower bounds
+		DistanceOracle oracle = new DistanceOracle(graph, terminals, false);
+		terminalDist = new int[terminals.size()][n];
+		for(int i = 0; i < terminals.size(); i++) {
+			for(int v = 0; v < n; v++) {
+				terminalDist[i][v] = oracle.getDistance(terminals.get(i), v);
+			}
+		}
+
+		mstWeight = new int[fullMask + 1];
+		Arrays.fill(mstWeight, -1);
+		DreyWagCache labels = new DreyWagCache(fullMask + 1, n);
+		long[] settled = new long[(int) (((long) (fullMask + 1) * n + 63) >>> 6)];
+		LabelQueue queue = new LabelQueue();
+		for(int i = 0; i + 1 < terminals.size(); i++) {
+			labels.setLeaf(1 << i, terminalColumns[i], 0);
+			queue.add(lowerBound(terminalColumns[i], 1 << i), (1 << i) * n + terminalColumns[i]);
+		}
+
+		while(!queue.isEmpty()) {
+			int state = queue.poll();
+			if ((settled[state >>> 6] & (1L << state)) != 0) continue;
+			settled[state >>> 6] |= 1L << state;
+			int I = state / n;
+			int v = state % n;
+			if (I == fullMask && v == root) break;
+			int label = labels.getCachedWeight(I, v);
+
+			// Extend the tree along an edge
+			for(int k = graph.start(v); k < graph.end(v); k++) {
+				int w = graph.target(k);
+				int newLabel = label + graph.weight(k);
+				if (newLabel < labels.getCachedWeight(I, w) && (settled[(I * n + w) >>> 6] & (1L << (I * n + w))) == 0) {
+					int bound = lowerBound(w, I);
+					if (bound == DistanceOracle.INFINITY) continue;
+					if ((long) newLabel + bound > upperBound) {
+						prunedStates++;
+						continue;
+					}
+					labels.set(I, w, newLabel, I, v);
+					queue.add(newLabel + bound, I * n + w);
+				}
+			}
+
+			// Merge with the settled labels at the same vertex covering disjoint terminals
+			int complement = fullMask ^ I;
+			for(int J = complement; J > 0; J = (J - 1) & complement) {
+				int other = J * n + v;
+				if ((settled[other >>> 6] & (1L << other)) == 0) continue;
+				int union = I | J;
+				int newLabel = label + labels.getCachedWeight(J, v);
+				if (newLabel < labels.getCachedWeight(union, v) && (settled[(union * n + v) >>> 6] & (1L << (union * n + v))) == 0) {
+					int bound = lowerBound(v, union);
+					if (bound == DistanceOracle.INFINITY) continue;
+					if ((long) newLabel + bound > upperBound) {
+						prunedStates++;
+						continue;
+					}
+					labels.set(union, v, newLabel, I, v);
+					queue.add(newLabel + bound, union * n + v);
+				}
+			}
+		}
+		optimalTreeWeight = labels.getCachedWeight(fullMask, root);
+
+		// Trace back, a label is either a leaf, an edge to its parent column in the same row, or a merge
+		Set<Integer> edgeIDs = new HashSet<Integer>();
+		int[] rowStack = new int[2 * terminals.size()];
+		int[] columnStack = new int[2 * terminals.size()];
+		int top = 0;
+		rowStack[top] = fullMask;
+		columnStack[top++] = root;
+		while(top > 0 && optimalTreeWeight != DreyWagCache.INFINITY) {
+			int row = rowStack[--top];
+			int column = columnStack[top];
+			int parentColumn;
+			while((parentColumn = labels.getParentColumn(row, column)) != DreyWagCache.NO_PARENT) {
+				if (labels.getFirstParentRow(row, column) == row) {
+					edgeIDs.addAll(graph.getPath(graph.findEdgeRef(column, parentColumn)));
+					column = parentColumn;
+				}
+				else {
+					rowStack[top] = labels.getSecondParentRow(row, column);
+					columnStack[top++] = column;
+					row = labels.getFirstParentRow(row, column);
+				}
+			}
+		}
+		steinerEdges = new ArrayList<>(edgeIDs);
+		Collections.sort(steinerEdges);
+	}
+
+	/**
+	 * Lower bound on the cost of connecting v to the terminals R not in I, including the root.
+	 * It is the maximum of the distance to the farthest terminal of R and the 1-tree bound, half of
+	 * the minimum spanning tree on R in the metric closure plus the two shortest distances from v to R.
+	 * Both are valid in the sense of Hougardy, Silvanus, Vygen, so labels are settled with their optimal weight.
+	 * @param v column of the vertex
+	 * @param I subset of the terminals already connected
+	 * @return lower bound, INFINITY if some terminal can not be reached from v
+	 */
+	private int lowerBound(int v, int I) {
+		int R = fullMask ^ I;
+		int farthest = terminalDist[terminalColumns.length - 1][v];
+		int first = farthest;
+		int second = DistanceOracle.INFINITY;
+		if (farthest == DistanceOracle.INFINITY) return DistanceOracle.INFINITY;
+		for(int i = 0; i + 1 < terminalColumns.length; i++) {
+			if ((R & (1 << i)) == 0) continue;
+			int d = terminalDist[i][v];
+			if (d == DistanceOracle.INFINITY) return DistanceOracle.INFINITY;
+			farthest = Math.max(farthest, d);
+			if (d < first) {
+				second = first;
+				first = d;
+			}
+			else if (d < second) second = d;
+		}
+		if (second == DistanceOracle.INFINITY) second = first;
+		long oneTree = (long) remainingTreeWeight(R) + first + second;
+		return (int) Math.max(farthest, (oneTree + 1) / 2);
+	}
+
+	/**
+	 * Weight of the minimum spanning tree on a subset of the terminals and the root in the metric closure,
+	 * computed by Prim's algorithm on first use
+	 * @param R subset of the non-root terminals
+	 */
+	private int remainingTreeWeight(int R) {
+		if (mstWeight[R] != -1) return mstWeight[R];
+		int[] nodes = new int[Integer.bitCount(R) + 1];
+		int count = 0;
+		for(int i = 0; i + 1 < terminalColumns.length; i++) {
+			if ((R & (1 << i)) != 0) nodes[count++] = i;
+		}
+		nodes[count++] = terminalColumns.length - 1;
+		int[] key = new int[count];
+		Arrays.fill(key, DistanceOracle.INFINITY);
+		key[0] = 0;
+		boolean[] inTree = new boolean[count];
+		long weight = 0;
+		for(int step = 0; step < count; step++) {
+			int next = -1;
+			for(int i = 0; i < count; i++) {
+				if (!inTree[i] && (next == -1 || key[i] < key[next])) next = i;
+			}
+			inTree[next] = true;
+			weight += key[next];
+			int[] row = terminalDist[nodes[next]];
+			for(int i = 0; i < count; i++) {
+				if (!inTree[i]) key[i] = Math.min(key[i], row[terminalColumns[nodes[i]]]);
+			}
+		}
+		mstWeight[R] = (int) Math.min(weight, DistanceOracle.INFINITY);
+		return mstWeight[R];
+	}
+
+	/**
+	 * Binary min-heap of states packed with their keys into longs, outdated entries are skipped when polled
+	 */
+	private static class LabelQueue {
+		private long[] heap = new long[64];
+		private int size = 0;
+
+		boolean isEmpty() {
+			return size == 0;
+		}
+
+		void add(int key, int state) {
+			if (size == heap.length) heap = Arrays.copyOf(heap, 2 * size);
+			long entry = ((long) key << 32) | state;
+			int p = size++;
+			while(p > 0 && heap[(p - 1) >>> 1] > entry) {
+				heap[p] = heap[(p - 1) >>> 1];
+				p = (p - 1) >>> 1;
+			}
+			heap[p] = entry;
+		}
+
+		int poll() {
+			int state = (int) heap[0];
+			long last = heap[--size];
+			int p = 0;
+			while(true) {
+				int child = 2 * p + 1;
+				if (child >= size) break;
+				if (child + 1 < size && heap[child + 1] < heap[child]) child++;
+				if (heap[child] >= last) break;
+				heap[p] = heap[child];
+				p = child;
+			}
+			heap[p] = last;
+			return state;
+		}
+	}
+}
@@ -0,0 +1,183 @@
+package steiner;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.List;
+
+/**
+ * Shortest path distances from a set of source vertices to all vertices of a SteinerGraph.
+ * Rows are computed either by one Dijkstra run per source on a compressed sparse row view of the graph, or for
+ * small dense graphs by a blocked Floyd-Warshall over all vertices. Distances and predecessors are kept
+ * in flat primitive arrays indexed by the vertex indices of the view, the oracle is read-only once constructed.
+ */
+public class DistanceOracle {
+	public static final int INFINITY = Integer.MAX_VALUE;
+	private static final int BLOCK = 64;
+
+	private final CSRGraph graph;
+	private final int n;
+	private final int[] indexToRow;
+	private final int[] dist;
+	private final int[] pred;
+
+	/**
+	 * Computes distances from the given sources, choosing between Dijkstra and Floyd-Warshall
+	 * @param steinerGraph graph
+	 * @param sources vertices whose rows are needed
+	 */
+	public DistanceOracle(SteinerGraph steinerGraph, Collection<Integer> sources) {
+		this(new CSRGraph(steinerGraph), sources);
+	}
+
+	/**
+	 * Computes distances from the given sources, choosing between Dijkstra and Floyd-Warshall
+	 * @param graph view of the graph, it may be shared with other readers
+	 * @param sources vertices whose rows are needed
+	 */
+	public DistanceOracle(CSRGraph graph, Collection<Integer> sources) {
+		this(graph, sources, preferFloydWarshall(graph, sources.size()));
+	}
+
+	/**
+	 * Computes distances from the given sources
+	 * @param graph view of the graph, it may be shared with other readers
+	 * @param sources vertices whose rows are needed, ignored by Floyd-Warshall which computes all rows
+	 * @param floydWarshall use the dense blocked Floyd-Warshall instead of repeated Dijkstra
+	 */
+	public DistanceOracle(CSRGraph graph, Collection<Integer> sources, boolean floydWarshall) {
+		this.graph = graph;
+		n = graph.size();
+		indexToRow = new int[n];
+		Arrays.fill(indexToRow, -1);
+		int rows = 0;
+		if (floydWarshall) {
+			for(int j = 0; j < n; j++) indexToRow[j] = rows++;
+		}
+		else {
+			for(Integer source : sources) {
+				if (indexToRow[graph.getIndex(source)] == -1) indexToRow[graph.getIndex(source)] = rows++;
+			}
+		}
+		if ((long) rows * n > Integer.MAX_VALUE - 8) {
+			throw new IllegalArgumentException("Distance table of " + rows + "x" + n + " entries is too large");
+		}
+		dist = new int[rows * n];
+		pred = new int[rows * n];
+		Arrays.fill(dist, INFINITY);
+		Arrays.fill(pred, -1);
+
+		if (floydWarshall) floydWarshall();
+		else {
+			IndexedHeap queue = new IndexedHeap(n);
+			for(int j = 0; j < n; j++) {
+				if (indexToRow[j] != -1) dijkstra(j, indexToRow[j] * n, queue);
+			}
+		}
+	}
+
+	/**
+	 * Repeated Dijkstra costs about |sources| * m log n, Floyd-Warshall n^3 with a much smaller constant
+	 */
+	private static boolean preferFloydWarshall(CSRGraph graph, int sources) {
+		long n = graph.size();
+		long m = graph.getEdgeCount();
+		long log = 64 - Long.numberOfLeadingZeros(n);
+		return n * n * n <= 4 * sources * (2 * m + n) * log;
+	}
+
+	private void dijkstra(int source, int offset, IndexedHeap queue) {
+		dist[offset + source] = 0;
+		queue.push(source, 0);
+		while(!queue.isEmpty()) {
+			int u = queue.poll();
+			int du = dist[offset + u];
+			for(int k = graph.start(u); k < graph.end(u); k++) {
+				int v = graph.target(k);
+				int newDist = du + graph.weight(k);
+				if (newDist < dist[offset + v]) {
+					dist[offset + v] = newDist;
+					pred[offset + v] = u;
+					queue.push(v, newDist);
+				}
+			}
+		}
+	}
+
+	/**
+	 * Blocked Floyd-Warshall, for every diagonal block the block itself is closed first,
+	 * then its row and column blocks, then all remaining blocks
+	 */
+	private void floydWarshall() {
+		for(int u = 0; u < n; u++) {
+			dist[u * n + u] = 0;
+			for(int k = graph.start(u); k < graph.end(u); k++) {
+				dist[u * n + graph.target(k)] = graph.weight(k);
+				pred[u * n + graph.target(k)] = u;
+			}
+		}
+		for(int b = 0; b < n; b += BLOCK) {
+			int bEnd = Math.min(b + BLOCK, n);
+			relaxBlock(b, bEnd, b, bEnd, b, bEnd);
+			for(int o = 0; o < n; o += BLOCK) {
+				if (o == b) continue;
+				int oEnd = Math.min(o + BLOCK, n);
+				relaxBlock(b, bEnd, b, bEnd, o, oEnd);
+				relaxBlock(b, bEnd, o, oEnd, b, bEnd);
+			}
+			for(int i = 0; i < n; i += BLOCK) {
+				if (i == b) continue;
+				int iEnd = Math.min(i + BLOCK, n);
+				for(int j = 0; j < n; j += BLOCK) {
+					if (j == b) continue;
+					relaxBlock(b, bEnd, i, iEnd, j, Math.min(j + BLOCK, n));
+				}
+			}
+		}
+	}
+
+	private void relaxBlock(int kFrom, int kTo, int iFrom, int iTo, int jFrom, int jTo) {
+		for(int k = kFrom; k < kTo; k++) {
+			for(int i = iFrom; i < iTo; i++) {
+				int dik = dist[i * n + k];
+				if (dik == INFINITY) continue;
+				for(int j = jFrom; j < jTo; j++) {
+					int dkj = dist[k * n + j];
+					if (dkj != INFINITY && dik + dkj < dist[i * n + j]) {
+						dist[i * n + j] = dik + dkj;
+						pred[i * n + j] = pred[k * n + j];
+					}
+				}
+			}
+		}
+	}
+
+	/**
+	 * @param source vertex with a computed row
+	 * @param target any vertex
+	 * @return length of a shortest path, INFINITY if there is none
+	 */
+	public int getDistance(int source, int target) {
+		return dist[indexToRow[graph.getIndex(source)] * n + graph.getIndex(target)];
+	}
+
+	/**
+	 * Collects the identifiers of the input edges along a shortest path
+	 * @param source vertex with a computed row
+	 * @param target any vertex
+	 * @return edge identifiers, empty if there is no path
+	 */
+	public List<Integer> getPathIDs(int source, int target) {
+		List<Integer> ids = new ArrayList<Integer>();
+		int offset = indexToRow[graph.getIndex(source)] * n;
+		int s = graph.getIndex(source);
+		int v = graph.getIndex(target);
+		if (dist[offset + v] == INFINITY) return ids;
+		while(v != s) {
+			int u = pred[offset + v];
+			ids.addAll(graph.getPath(graph.findEdgeRef(u, v)));
+			v = u;
+		}
+		return ids;
+	}
+}
@@ -1,74 +1,71 @@
 package steiner;
 
+import java.util.Arrays;
+
 /**
- * Simple cache data structure used by the Dreyfus Wagner algorithm
+ * Flat table used by the Dreyfus Wagner and Erickson Monma Veinott algorithms. Every cell of a row (subset of terminals) and
+ * column (vertex) stores the weight of the cheapest tree, the first parent row of the split
+ * and the parent column. The second parent row is the complement of the first one within the row.
+ * The three fields are kept as consecutive row-major blocks of a single primitive array,
+ * so no object is allocated per cell.
  */
 public class DreyWagCache {
-	private Integer cachedWeight;
-	private Integer row;
-	private Integer column;
-	private Integer firstParentRow;
-	private Integer secondParentRow;
-	private Integer parentColumn;
-	
-	public DreyWagCache(Integer cachedWeight, Integer row, Integer column, Integer firstParentRow, Integer secondParentRow, Integer parentColumn) {
-		set(cachedWeight, row, column, firstParentRow, secondParentRow, parentColumn);
-	}
-	
-	public void set(Integer cachedWeight, Integer row, Integer column, Integer firstParentRow, Integer secondParentRow, Integer parentColumn) {
-		setCachedWeight(cachedWeight);
-		setRow(row);
-		setColumn(column);
-		setFirstParentRow(firstParentRow);
-		setSecondParentRow(secondParentRow);
-		setParentColumn(parentColumn);
-	}
-
-	public Integer getCachedWeight() {
-		return cachedWeight;
-	}
-
-	private void setCachedWeight(Integer cachedWeight) {
-		this.cachedWeight = cachedWeight;
-	}
-
-	public Integer getRow() {
-		return row;
-	}
+	public static final int INFINITY = Integer.MAX_VALUE;
+	public static final int NO_PARENT = -1;
 
-	private void setRow(Integer row) {
-		this.row = row;
-	}
-
-	public Integer getColumn() {
-		return column;
-	}
+	private final int columns;
+	private final int size;
+	private final int[] cells;
 
-	private void setColumn(Integer column) {
-		this.column = column;
+	/**
+	 * Creates a table with every weight set to infinity and no parents
+	 * @param rows number of rows
+	 * @param columns number of columns
+	 */
+	public DreyWagCache(int rows, int columns) {
+		if (3L * rows * columns > Integer.MAX_VALUE - 8) {
+			throw new IllegalArgumentException("Dreyfus-Wagner table of " + rows + "x" + columns + " cells is too large");
+		}
+		this.columns = columns;
+		size = rows * columns;
+		cells = new int[3 * size];
+		Arrays.fill(cells, 0, size, INFINITY);
+		Arrays.fill(cells, 2 * size, 3 * size, NO_PARENT);
 	}
 
-	public Integer getFirstParentRow() {
-		return firstParentRow;
+	/**
+	 * Stores a cell without parents, i.e. a shortest path from a single terminal
+	 */
+	public void setLeaf(int row, int column, int cachedWeight) {
+		int i = row * columns + column;
+		cells[i] = cachedWeight;
+		cells[size + i] = 0;
+		cells[2 * size + i] = NO_PARENT;
 	}
 
-	private void setFirstParentRow(Integer firstParentRow) {
-		this.firstParentRow = firstParentRow;
+	/**
+	 * Stores a cell obtained by joining rows firstParentRow and row^firstParentRow at parentColumn
+	 */
+	public void set(int row, int column, int cachedWeight, int firstParentRow, int parentColumn) {
+		int i = row * columns + column;
+		cells[i] = cachedWeight;
+		cells[size + i] = firstParentRow;
+		cells[2 * size + i] = parentColumn;
 	}
 
-	public Integer getSecondParentRow() {
-		return secondParentRow;
+	public int getCachedWeight(int row, int column) {
+		return cells[row * columns + column];
 	}
 
-	private void setSecondParentRow(Integer secondParentRow) {
-		this.secondParentRow = secondParentRow;
+	public int getFirstParentRow(int row, int column) {
+		return cells[size + row * columns + column];
 	}
 
-	public Integer getParentColumn() {
-		return parentColumn;
+	public int getSecondParentRow(int row, int column) {
+		return row ^ cells[size + row * columns + column];
 	}
 
-	private void setParentColumn(Integer parentColumn) {
-		this.parentColumn = parentColumn;
+	public int getParentColumn(int row, int column) {
+		return cells[2 * size + row * columns + column];
 	}
 }
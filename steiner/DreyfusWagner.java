@@ -1,227 +1,289 @@
 package steiner;
 
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collections;
-import java.util.Comparator;
-import java.util.HashMap;
 import java.util.HashSet;
 import java.util.List;
-import java.util.Map;
 import java.util.Set;
-import java.util.Stack;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+import java.util.concurrent.atomic.LongAdder;
 
 /**
  * Implementation of FPT algorithm solving Steiner Tree problem by Dreyfus, Wagner '71
  */
-public class DreyfusWagner {
+public class DreyfusWagner extends ExactSolver {
 
-	private List<Integer> steinerEdges;
-	private int optimalTreeWeight;
+	private final int threads;
+	private DreyWagCache cache;
+	private DistanceOracle dist;
+	private int n;
+	private int[][] terminalDist;
+	private int fullMask;
+	private LongAdder pruned;
+
+	public DreyfusWagner() {
+		this(1);
+	}
+
+	/**
+	 * @param threads number of threads used to fill the table, 1 runs sequentially
+	 */
+	public DreyfusWagner(int threads) {
+		this.threads = Math.max(1, threads);
+	}
 	
+	public String getName() {
+		return "Dreyfus-Wagner";
+	}
+
 	/**
 	 * Computes the exact Steiner tree using the Dreyfus-Wagner algorithm
-	 * @param steinerGraph instance to be solved
+	 * @param steinerGraph compact instance to be solved
 	 */
-	public void solve(SteinerGraph steinerGraph) {
-
-		// Make all terminals into leaves
-		Stack<Integer> terminalsToModify = new Stack<Integer>();
-		terminalsToModify.addAll(steinerGraph.terminals);
-		while(!terminalsToModify.isEmpty()) {
-			Integer t = terminalsToModify.pop();
-			if (steinerGraph.vertices.get(t).neighbours.size() == 1){
-				Integer singleNeighbour = new ArrayList<>(steinerGraph.vertices.get(t).neighbours).get(0);
-				if(!steinerGraph.vertices.get(singleNeighbour).isTerminal) continue;
-				else {
-					steinerGraph.unTerminal(singleNeighbour);
-					steinerGraph.vertices.put(steinerGraph.vertexCount, new SteinerGraphVertex(steinerGraph.vertexCount));
-					steinerGraph.setTerminal(steinerGraph.vertexCount);
-					steinerGraph.addEdge(singleNeighbour, steinerGraph.vertexCount, 0, new ArrayList<>());
-					steinerGraph.vertexCount++;
-					terminalsToModify.remove(singleNeighbour);
-					continue;
-				}
-			}
-			steinerGraph.unTerminal(t);
-			steinerGraph.vertices.put(steinerGraph.vertexCount, new SteinerGraphVertex(steinerGraph.vertexCount));
-			steinerGraph.setTerminal(steinerGraph.vertexCount);
-			steinerGraph.addEdge(t, steinerGraph.vertexCount, 0, new ArrayList<>());
-			steinerGraph.vertexCount++;
-		}
-		// Floyd-Warshall algorithm
-		Double[][] dist = new Double[steinerGraph.vertexCount][steinerGraph.vertexCount];
-		Integer[][] next = new Integer[steinerGraph.vertexCount][steinerGraph.vertexCount];
-		for(int i = 0; i < steinerGraph.vertexCount; i++) {
-			for(int j = 0; j < steinerGraph.vertexCount; j++) {
-				dist[i][j] = Double.POSITIVE_INFINITY;
-			}
-		}
-		for(SteinerGraphEdge e : steinerGraph.edges.values()) {
-			dist[e.getStart()][e.getEnd()] = e.getWeight().doubleValue();
-			dist[e.getEnd()][e.getStart()] = e.getWeight().doubleValue();
-			next[e.getStart()][e.getEnd()] = e.getEnd();
-			next[e.getEnd()][e.getStart()] = e.getStart();
-		}
-		for(Integer v : steinerGraph.vertices.keySet()) {
-			dist[v][v] = 0d;
-		}
-		for(int k = 0; k < steinerGraph.vertexCount; k++) {
-			for(int i = 0; i < steinerGraph.vertexCount; i++) {
-				for(int j = 0; j < steinerGraph.vertexCount; j++) {
-					if (dist[i][j] > dist[i][k] + dist[k][j]) {
-						dist[i][j] = dist[i][k] + dist[k][j];
-						next[i][j] = next[i][k];
-					}
-				}
-			}
-		}
+	protected void solveCompact(SteinerGraph steinerGraph) {
+
+		// Shortest paths from every vertex
+		dist = new DistanceOracle(steinerGraph, steinerGraph.vertices.keySet());
 		
-		// Map Steiner vertices to columns
-		Set<Integer> steinerVertices = new HashSet<Integer>(steinerGraph.vertices.keySet());
-		steinerVertices.removeAll(steinerGraph.terminals);
-		List<Integer> SV = new ArrayList<Integer>(steinerVertices);
-		Map<Integer, Integer> SVToColumn = new HashMap<Integer, Integer>();
-		Map<Integer, Integer> ColumnToSV = new HashMap<Integer, Integer>();
-		for(int i = 0; i < SV.size(); i++) {
-			SVToColumn.put(SV.get(i),i);
-			ColumnToSV.put(i,SV.get(i));
-		}
-		// Map subsets to rows
-		List<Set<Integer>> terminalPowerSet = powerSet(steinerGraph.terminals);
-		terminalPowerSet.remove(new HashSet<>());
-		Map<Set<Integer>, Integer> SubsetToRow = new HashMap<Set<Integer>, Integer>();
-		Map<Integer, Set<Integer>> RowToSubset = new HashMap<Integer, Set<Integer>>();
-		for(int i = 0; i < terminalPowerSet.size(); i++) {
-			SubsetToRow.put(terminalPowerSet.get(i), i);
-			RowToSubset.put(i, terminalPowerSet.get(i));
-		}
-		DreyWagCache[][] cache = new DreyWagCache[(int)(Math.pow(2, steinerGraph.terminals.size())-1)][steinerVertices.size()];
-		for(int i = 0; i < cache.length;i++) {
-			for(int j = 0; j < cache[0].length;j++) {
-				cache[i][j] = new DreyWagCache(Integer.MAX_VALUE, i, j, null, null, null);
+		// Vertices are compact, so they are used as columns directly. Terminals are columns as well,
+		// so a tree may branch or pass through them and they do not need to be made into leaves.
+		n = steinerGraph.vertices.size();
+
+		// Map terminals to bits, a subset of terminals is represented by a bitmask indexing its row
+		List<Integer> terminals = new ArrayList<Integer>(steinerGraph.terminals);
+		if (terminals.size() > 30) {
+			throw new IllegalArgumentException("Dreyfus-Wagner supports at most 30 terminals, got " + terminals.size());
+		}
+		fullMask = (1 << terminals.size()) - 1;
+		cache = new DreyWagCache(fullMask + 1, n);
+		terminalDist = new int[terminals.size()][n];
+		for(int i = 0; i < terminals.size(); i++) {
+			for(int j = 0; j < n; j++) {
+				terminalDist[i][j] = dist.getDistance(terminals.get(i), j);
 			}
 		}
+
+		// The minimum spanning tree on the terminals in the metric closure is a feasible solution
+		upperBound = Math.min(upperBound, terminalTreeWeight(terminals));
+		pruned = new LongAdder();
 		
 		// Singleton subset rows may be filled in trivially
-		for(Integer i : steinerGraph.terminals) {
-			Set<Integer> singletonSet = new HashSet<Integer>();
-			singletonSet.add(i);
-			for(Integer steinerVertex : steinerVertices) {
-				cache[SubsetToRow.get(singletonSet)][SVToColumn.get(steinerVertex)].set((int) Math.round(dist[i][steinerVertex]),
-						SubsetToRow.get(singletonSet), SVToColumn.get(steinerVertex), null, null, null);
+		for(int i = 0; i < terminals.size(); i++) {
+			int singleton = 1 << i;
+			for(int j = 0; j < n; j++) {
+				int d = terminalDist[i][j];
+				if (d == DistanceOracle.INFINITY) continue;
+				if (d > cellLimit(singleton, j)) {
+					pruned.increment();
+					continue;
+				}
+				cache.setLeaf(singleton, j, d);
 			}
 		}
 		
-		// Apply recurrence relation to the remaining rows
-		for(int i = steinerGraph.terminals.size(); i < cache.length; i++) {
-			Set<Integer> D = terminalPowerSet.get(i);
-			List<Set<Integer>> Dprimes = powerSet(D);
-			Dprimes.remove(Collections.EMPTY_SET);
-			Dprimes.remove(D);
-			for(Integer v : SV) {
-				for(Integer u : SV) {
-					for(Set<Integer> Dprime : Dprimes) {
-						int first = cache[SubsetToRow.get(Dprime)][SVToColumn.get(u)].getCachedWeight();
-						Set<Integer> DminusDprime = new HashSet<Integer>(D);
-						DminusDprime.removeAll(Dprime);
-						int second = cache[SubsetToRow.get(DminusDprime)][SVToColumn.get(u)].getCachedWeight();
-						int distance = (int) Math.round(dist[v][u]);
-						if (cache[SubsetToRow.get(D)][SVToColumn.get(v)].getCachedWeight() > first + second + distance) {
-							cache[SubsetToRow.get(D)][SVToColumn.get(v)].set(first + second + distance, SubsetToRow.get(D),
-								SVToColumn.get(v), SubsetToRow.get(Dprime), SubsetToRow.get(DminusDprime), SVToColumn.get(u));
+		// Apply recurrence relation to the remaining rows. Rows of a given cardinality only depend on
+		// smaller rows, so the cells of one layer can be computed independently of each other.
+		int[][] layers = cardinalityLayers(terminals.size());
+		ForkJoinPool pool = threads > 1 ? new ForkJoinPool(threads) : null;
+		try {
+			for(int s = 2; s < layers.length; s++) {
+				int[] layer = layers[s];
+				if (pool == null) {
+					for(int D : layer) {
+						for(int v = 0; v < n; v++) {
+							computeCell(D, v);
 						}
 					}
 				}
+				else {
+					int cells = layer.length * n;
+					pool.invoke(new LayerTask(layer, 0, cells, Math.max(1, cells / (threads * 8))));
+				}
 			}
 		}
+		finally {
+			if (pool != null) pool.shutdown();
+		}
 
 		// Find minimum in bottom row
-		int exact = Integer.MAX_VALUE;
+		int exact = DreyWagCache.INFINITY;
 		int exactColumn = -1;
-		for(int j = 0; j < cache[0].length;j++) {
-			if (cache[cache.length-1][j].getCachedWeight() < exact) {
-				exact = cache[cache.length-1][j].getCachedWeight();
+		for(int j = 0; j < n;j++) {
+			if (cache.getCachedWeight(fullMask, j) < exact) {
+				exact = cache.getCachedWeight(fullMask, j);
 				exactColumn = j;
 			}
 		}
 		optimalTreeWeight = exact;
+		prunedStates = pruned.sum();
+
+		// Trace back the splits, the tree of splits has at most 2*|T|-1 cells
 		Set<Integer> edgeIDs = new HashSet<Integer>();
-		Stack<DreyWagCache> parents = new Stack<DreyWagCache>();
-		parents.add(cache[cache.length-1][exactColumn]);
-		while(!parents.isEmpty()) {
-			DreyWagCache current = parents.pop();
-			if (current.getParentColumn() == null) {
-				edgeIDs.addAll(path(new ArrayList<>(RowToSubset.get(current.getRow())).get(0),
-						ColumnToSV.get(current.getColumn()), steinerGraph, next));
+		int[] rowStack = new int[2 * terminals.size()];
+		int[] columnStack = new int[2 * terminals.size()];
+		int top = 0;
+		rowStack[top] = fullMask;
+		columnStack[top++] = exactColumn;
+		while(top > 0 && exactColumn != -1) {
+			int row = rowStack[--top];
+			int column = columnStack[top];
+			int parentColumn = cache.getParentColumn(row, column);
+			if (parentColumn == DreyWagCache.NO_PARENT) {
+				edgeIDs.addAll(dist.getPathIDs(terminals.get(Integer.numberOfTrailingZeros(row)), column));
 			}
 			else {
-				edgeIDs.addAll(path(ColumnToSV.get(current.getColumn()), ColumnToSV.get(current.getParentColumn()), steinerGraph, next));
-				parents.add(cache[current.getFirstParentRow()][current.getParentColumn()]);
-				parents.add(cache[current.getSecondParentRow()][current.getParentColumn()]);				
+				edgeIDs.addAll(dist.getPathIDs(column, parentColumn));
+				rowStack[top] = cache.getFirstParentRow(row, column);
+				columnStack[top++] = parentColumn;
+				rowStack[top] = cache.getSecondParentRow(row, column);
+				columnStack[top++] = parentColumn;
 			}
 		}
 		steinerEdges = new ArrayList<>(edgeIDs);
 		Collections.sort(steinerEdges);
 	}
 	
-	private Set<Integer> path(Integer u, Integer v, SteinerGraph steinerGraph, Integer[][] next){
-		if (next[u][v] == null) return new HashSet<>();
-		List<Integer> p = new ArrayList<Integer>();
-		p.add(u);
-		while (!u.equals(v)) {
-			u = next[u][v];
-			p.add(u);
-		}
-		Set<Integer> ids = new HashSet<Integer>();
-		for(int i = 0; i + 1 < p.size(); i++) {
-			ids.addAll(steinerGraph.edges.get(new SortedPair(p.get(i), p.get(i+1))).getID());
-		}
-		return ids;
-	}
-	
 	/**
-	 * Computes a list of all subsets.
-	 * @param set Input set
-	 * @return A list of all subsets sorted by length, then lexicographically
+	 * Applies the recurrence relation to a single cell. Candidates that can not be extended to a tree
+	 * lighter than the upper bound are skipped, if all of them are skipped the cell is pruned.
+	 * @param D row, the subset of terminals as a bitmask
+	 * @param v column of the vertex
 	 */
-	private List<Set<Integer>> powerSet(Set<Integer> set) {
-	    List<Set<Integer>> powSet = new ArrayList<Set<Integer>>();
-	    if (set.isEmpty()) {
-	    	powSet.add(new HashSet<>());
-	        return powSet;
-	    }
-	    List<Integer> list = new ArrayList<Integer>(set);
-	    Set<Integer> rest = new HashSet<Integer>(list.subList(1, list.size())); 
-	    for (Set<Integer> s : powerSet(rest)) {
-	        Set<Integer> newSet = new HashSet<Integer>();
-	        newSet.add(list.get(0));
-	        newSet.addAll(s);
-	        powSet.add(newSet);
-	        powSet.add(s);
-	    }
-	    powSet.sort(new Comparator<Set<Integer>>() {
-			public int compare(Set<Integer> s1, Set<Integer> s2) {
-				if(s1.size() != s2.size()) return s1.size()-s2.size();
-				List<Integer> l1 = new ArrayList<Integer>(s1);
-				List<Integer> l2 = new ArrayList<Integer>(s2);
-				int i = 0;
-				while(i<l1.size()) {
-					if(l1.get(i).compareTo(l2.get(i)) != 0) {
-						return l1.get(i).compareTo(l2.get(i));
+	private void computeCell(int D, int v) {
+		long limit = cellLimit(D, v);
+		if (limit < 0) {
+			pruned.increment();
+			return;
+		}
+		// Each split {D', D\D'} is visited once by keeping the lowest terminal of D in D'
+		int low = D & -D;
+		int rest = D ^ low;
+		int best = cache.getCachedWeight(D, v);
+		int bestSplit = 0;
+		int bestColumn = DreyWagCache.NO_PARENT;
+		boolean rejected = false;
+		for(int u = 0; u < n; u++) {
+			int distance = dist.getDistance(v, u);
+			if (distance == DistanceOracle.INFINITY) continue;
+			if (distance > limit) {
+				rejected = true;
+				continue;
+			}
+			for(int sub = (rest - 1) & rest; ; sub = (sub - 1) & rest) {
+				int Dprime = sub | low;
+				int DminusDprime = rest ^ sub;
+				int first = cache.getCachedWeight(Dprime, u);
+				int second = cache.getCachedWeight(DminusDprime, u);
+				if (first != DreyWagCache.INFINITY && second != DreyWagCache.INFINITY) {
+					long candidate = (long) first + second + distance;
+					if (candidate > limit) rejected = true;
+					else if (best > candidate) {
+						best = (int) candidate;
+						bestSplit = Dprime;
+						bestColumn = u;
 					}
-					i++;
 				}
-				return 0;
+				if (sub == 0) break;
 			}
-		});
-	    return powSet;
+		}
+		if (bestColumn != DreyWagCache.NO_PARENT) cache.set(D, v, best, bestSplit, bestColumn);
+		else if (rejected) pruned.increment();
 	}
-	
-	public int getWeight() {
-		return optimalTreeWeight;
+
+	/**
+	 * Largest weight a cell may have and still be part of a tree not heavier than the upper bound.
+	 * The rest of such a tree connects the column to every terminal outside the row.
+	 * @param D row, the subset of terminals as a bitmask
+	 * @param v column of the vertex
+	 */
+	private long cellLimit(int D, int v) {
+		if (upperBound == DreyWagCache.INFINITY) return Long.MAX_VALUE;
+		int farthest = 0;
+		for(int i = 0; i < terminalDist.length; i++) {
+			if ((D & (1 << i)) == 0) farthest = Math.max(farthest, terminalDist[i][v]);
+		}
+		return (long) upperBound - farthest;
 	}
-	
-	public List<Integer> getEdges() {
-		return steinerEdges;
+
+	/**
+	 * Computes the weight of the minimum spanning tree on the terminals in the metric closure by Prim's algorithm
+	 * @param terminals list of terminals
+	 * @return weight of the tree, INFINITY if the terminals are not connected
+	 */
+	private int terminalTreeWeight(List<Integer> terminals) {
+		int[] key = new int[terminals.size()];
+		boolean[] inTree = new boolean[terminals.size()];
+		Arrays.fill(key, DistanceOracle.INFINITY);
+		long weight = 0;
+		if (!terminals.isEmpty()) key[0] = 0;
+		for(int step = 0; step < terminals.size(); step++) {
+			int next = -1;
+			for(int i = 0; i < terminals.size(); i++) {
+				if (!inTree[i] && (next == -1 || key[i] < key[next])) next = i;
+			}
+			if (key[next] == DistanceOracle.INFINITY) return DreyWagCache.INFINITY;
+			inTree[next] = true;
+			weight += key[next];
+			for(int i = 0; i < terminals.size(); i++) {
+				if (!inTree[i]) key[i] = Math.min(key[i], dist.getDistance(terminals.get(next), terminals.get(i)));
+			}
+		}
+		return (int) Math.min(weight, DreyWagCache.INFINITY);
+	}
+
+	/**
+	 * Groups all non-empty subsets of the terminals by cardinality
+	 * @param terminalCount number of terminals
+	 * @return array where the s-th element holds the bitmasks of all subsets of size s
+	 */
+	private static int[][] cardinalityLayers(int terminalCount) {
+		int fullMask = (1 << terminalCount) - 1;
+		int[] layerSize = new int[terminalCount + 1];
+		for(int D = 1; D <= fullMask; D++) {
+			layerSize[Integer.bitCount(D)]++;
+		}
+		int[][] layers = new int[terminalCount + 1][];
+		for(int s = 0; s <= terminalCount; s++) {
+			layers[s] = new int[layerSize[s]];
+			layerSize[s] = 0;
+		}
+		for(int D = 1; D <= fullMask; D++) {
+			int s = Integer.bitCount(D);
+			layers[s][layerSize[s]++] = D;
+		}
+		return layers;
+	}
+
+	/**
+	 * Computes a range of the cells of one cardinality layer, cell i being row layer[i / n] and column i % n
+	 */
+	private class LayerTask extends RecursiveAction {
+		private static final long serialVersionUID = 1L;
+
+		private final int[] layer;
+		private final int from;
+		private final int to;
+		private final int grain;
+
+		LayerTask(int[] layer, int from, int to, int grain) {
+			this.layer = layer;
+			this.from = from;
+			this.to = to;
+			this.grain = grain;
+		}
+
+		@Override
+		protected void compute() {
+			if (to - from <= grain) {
+				for(int i = from; i < to; i++) {
+					computeCell(layer[i / n], i % n);
+				}
+				return;
+			}
+			int middle = (from + to) >>> 1;
+			invokeAll(new LayerTask(layer, from, middle, grain), new LayerTask(layer, middle, to, grain));
+		}
 	}
 }
@@ -0,0 +1,164 @@
+package steiner;
+
+import java.util.AbstractList;
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+
+/**
+ * Immutable list of the input edge identifiers of the path represented by an edge. A concatenation keeps
+ * references to its parts instead of copying them, so the paths of subdivisions, closure edges and snapshots
+ * share their identifiers. The identifiers are only laid out one after another when they are iterated.
+ */
+public final class EdgePath extends AbstractList<Integer> {
+	/** Concatenations deeper than this are flattened, so reading an identifier stays cheap */
+	private static final int MAX_DEPTH = 32;
+	public static final EdgePath EMPTY = new EdgePath(new int[0]);
+
+	// Either a leaf with its identifiers or a concatenation of two non-empty paths
+	private final int[] ids;
+	private final EdgePath left;
+	private final EdgePath right;
+	private final int size;
+	private final int depth;
+	private final int first;
+
+	private EdgePath(int[] ids) {
+		this.ids = ids;
+		left = null;
+		right = null;
+		size = ids.length;
+		depth = 0;
+		first = size > 0 ? ids[0] : -1;
+	}
+
+	private EdgePath(EdgePath left, EdgePath right) {
+		ids = null;
+		this.left = left;
+		this.right = right;
+		size = left.size + right.size;
+		depth = Math.max(left.depth, right.depth) + 1;
+		first = left.first;
+	}
+
+	/**
+	 * @param id identifier of an input edge
+	 * @return path of a single edge
+	 */
+	public static EdgePath of(int id) {
+		return new EdgePath(new int[] {id});
+	}
+
+	/**
+	 * @param ids identifiers of input edges, copied unless they already form a path
+	 * @return path of the edges in order
+	 */
+	public static EdgePath of(List<Integer> ids) {
+		if (ids instanceof EdgePath) return (EdgePath) ids;
+		int[] copy = new int[ids.size()];
+		int i = 0;
+		for(Integer id : ids) {
+			copy[i++] = id;
+		}
+		return new EdgePath(copy);
+	}
+
+	/**
+	 * @return path of the edges of the first list followed by the edges of the second one
+	 */
+	public static EdgePath concat(List<Integer> a, List<Integer> b) {
+		EdgePath p = of(a);
+		EdgePath q = of(b);
+		if (p.size == 0) return q;
+		if (q.size == 0) return p;
+		if (Math.max(p.depth, q.depth) < MAX_DEPTH) return new EdgePath(p, q);
+		int[] flat = new int[p.size + q.size];
+		p.copyTo(flat, 0);
+		q.copyTo(flat, p.size);
+		return new EdgePath(flat);
+	}
+
+	/**
+	 * Concatenates paths pairwise, so the result is balanced whatever the number of parts
+	 * @param parts paths in order
+	 * @return path of the edges of all parts
+	 */
+	public static EdgePath concat(List<? extends List<Integer>> parts) {
+		return concat(parts, 0, parts.size());
+	}
+
+	private static EdgePath concat(List<? extends List<Integer>> parts, int from, int to) {
+		if (to - from == 0) return EMPTY;
+		if (to - from == 1) return of(parts.get(from));
+		int middle = (from + to) >>> 1;
+		return concat(concat(parts, from, middle), concat(parts, middle, to));
+	}
+
+	@Override
+	public int size() {
+		return size;
+	}
+
+	@Override
+	public Integer get(int index) {
+		if (index < 0 || index >= size) throw new IndexOutOfBoundsException("Index " + index + " of " + size);
+		if (index == 0) return first;
+		EdgePath p = this;
+		while(p.ids == null) {
+			if (index < p.left.size) p = p.left;
+			else {
+				index -= p.left.size;
+				p = p.right;
+			}
+		}
+		return p.ids[index];
+	}
+
+	@Override
+	public Iterator<Integer> iterator() {
+		return new Iterator<Integer>() {
+			// Leaves are reached depth first, the right parts waiting are kept on a stack
+			private final Deque<EdgePath> pending = new ArrayDeque<>();
+			private int[] leaf = new int[0];
+			private int next = 0;
+			{
+				if (size > 0) pending.push(EdgePath.this);
+			}
+
+			public boolean hasNext() {
+				while(next == leaf.length) {
+					if (pending.isEmpty()) return false;
+					EdgePath p = pending.pop();
+					while(p.ids == null) {
+						pending.push(p.right);
+						p = p.left;
+					}
+					leaf = p.ids;
+					next = 0;
+				}
+				return true;
+			}
+
+			public Integer next() {
+				if (!hasNext()) throw new NoSuchElementException();
+				return leaf[next++];
+			}
+		};
+	}
+
+	private void copyTo(int[] target, int offset) {
+		Deque<EdgePath> pending = new ArrayDeque<>();
+		if (size > 0) pending.push(this);
+		while(!pending.isEmpty()) {
+			EdgePath p = pending.pop();
+			while(p.ids == null) {
+				pending.push(p.right);
+				p = p.left;
+			}
+			System.arraycopy(p.ids, 0, target, offset, p.ids.length);
+			offset += p.ids.length;
+		}
+	}
+}
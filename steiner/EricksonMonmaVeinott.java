@@ -0,0 +1,114 @@
+package steiner;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * Implementation of FPT algorithm solving Steiner Tree problem by Erickson, Monma, Veinott '87.
+ * Sub-solutions are combined at the same vertex, then every row is propagated along the edges
+ * of the graph by a single Dijkstra run, so no all-pairs distances are needed.
+ */
+public class EricksonMonmaVeinott extends ExactSolver {
+
+	public String getName() {
+		return "Erickson-Monma-Veinott";
+	}
+
+	/**
+	 * Computes the exact Steiner tree using the Erickson-Monma-Veinott algorithm
+	 * @param steinerGraph compact instance to be solved
+	 */
+	protected void solveCompact(SteinerGraph steinerGraph) {
+
+		// Vertices are compact, so they are used as columns directly and keep their numbers in the view
+		int n = steinerGraph.vertices.size();
+		CSRGraph graph = new CSRGraph(steinerGraph);
+
+		// The last terminal is the root, all other terminals are mapped to bits
+		List<Integer> terminals = new ArrayList<Integer>(steinerGraph.terminals);
+		if (terminals.size() < 2) {
+			optimalTreeWeight = 0;
+			steinerEdges = new ArrayList<>();
+			return;
+		}
+		if (terminals.size() > 31) {
+			throw new IllegalArgumentException("Erickson-Monma-Veinott supports at most 31 terminals, got " + terminals.size());
+		}
+		int root = terminals.get(terminals.size() - 1);
+		int fullMask = (1 << (terminals.size() - 1)) - 1;
+		DreyWagCache cache = new DreyWagCache(fullMask + 1, n);
+		IndexedHeap queue = new IndexedHeap(n);
+
+		for(int D = 1; D <= fullMask; D++) {
+			if ((D & (D - 1)) == 0) {
+				cache.setLeaf(D, terminals.get(Integer.numberOfTrailingZeros(D)), 0);
+			}
+			else {
+				// Combine two sub-solutions at the same vertex, each split {D', D\D'} is visited once
+				int low = D & -D;
+				int rest = D ^ low;
+				for(int v = 0; v < n; v++) {
+					int best = DreyWagCache.INFINITY;
+					int bestSplit = 0;
+					for(int sub = (rest - 1) & rest; ; sub = (sub - 1) & rest) {
+						int first = cache.getCachedWeight(sub | low, v);
+						int second = cache.getCachedWeight(rest ^ sub, v);
+						if (first != DreyWagCache.INFINITY && second != DreyWagCache.INFINITY && best > first + second) {
+							best = first + second;
+							bestSplit = sub | low;
+						}
+						if (sub == 0) break;
+					}
+					if (best != DreyWagCache.INFINITY) cache.set(D, v, best, bestSplit, v);
+				}
+			}
+
+			// Propagate the row along shortest paths
+			for(int v = 0; v < n; v++) {
+				if (cache.getCachedWeight(D, v) != DreyWagCache.INFINITY) queue.push(v, cache.getCachedWeight(D, v));
+			}
+			while(!queue.isEmpty()) {
+				int distance = queue.peekKey();
+				int u = queue.poll();
+				for(int k = graph.start(u); k < graph.end(u); k++) {
+					int v = graph.target(k);
+					int newDistance = distance + graph.weight(k);
+					if (newDistance < cache.getCachedWeight(D, v)) {
+						cache.set(D, v, newDistance, D, u);
+						queue.push(v, newDistance);
+					}
+				}
+			}
+		}
+		optimalTreeWeight = cache.getCachedWeight(fullMask, root);
+
+		// Trace back, a cell is either a leaf, an edge to its parent column in the same row, or a split
+		Set<Integer> edgeIDs = new HashSet<Integer>();
+		int[] rowStack = new int[2 * terminals.size()];
+		int[] columnStack = new int[2 * terminals.size()];
+		int top = 0;
+		rowStack[top] = fullMask;
+		columnStack[top++] = root;
+		while(top > 0) {
+			int row = rowStack[--top];
+			int column = columnStack[top];
+			int parentColumn;
+			while((parentColumn = cache.getParentColumn(row, column)) != DreyWagCache.NO_PARENT) {
+				if (cache.getFirstParentRow(row, column) == row) {
+					edgeIDs.addAll(graph.getPath(graph.findEdgeRef(column, parentColumn)));
+					column = parentColumn;
+				}
+				else {
+					rowStack[top] = cache.getSecondParentRow(row, column);
+					columnStack[top++] = column;
+					row = cache.getFirstParentRow(row, column);
+				}
+			}
+		}
+		steinerEdges = new ArrayList<>(edgeIDs);
+		Collections.sort(steinerEdges);
+	}
+}
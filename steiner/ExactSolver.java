@@ -0,0 +1,64 @@
+package steiner;
+
+import java.util.List;
+
+/**
+ * Parent class for exact algorithms that solve the instance left after the kernel
+ */
+public abstract class ExactSolver {
+	protected List<Integer> steinerEdges;
+	protected int optimalTreeWeight;
+	protected int upperBound = Integer.MAX_VALUE;
+	protected long prunedStates;
+
+	/**
+	 * Computes the exact Steiner tree. The instance is compacted first, so that solvers may use
+	 * vertex identifiers as array indices, and the resulting edges are mapped back afterwards.
+	 * @param steinerGraph instance to be solved
+	 */
+	public void solve(SteinerGraph steinerGraph) {
+		GraphCompaction compaction = new GraphCompaction(steinerGraph);
+		solveCompact(compaction.getGraph());
+		steinerEdges = compaction.expandEdges(steinerEdges);
+	}
+
+	/**
+	 * Computes the exact Steiner tree of a compact instance
+	 * @param steinerGraph instance with vertices 0..n-1 and edges 0..m-1, each edge having a single identifier
+	 */
+	protected abstract void solveCompact(SteinerGraph steinerGraph);
+
+	/**
+	 * @return name of the algorithm, shown when it runs
+	 */
+	public abstract String getName();
+
+	/**
+	 * Sets the weight of a known feasible solution, solvers may skip states that can not improve on it
+	 * @param upperBound weight of a feasible Steiner tree of the instance
+	 */
+	public void setUpperBound(int upperBound) {
+		this.upperBound = upperBound;
+	}
+
+	/**
+	 * @return number of states skipped because of the upper bound
+	 */
+	public long getPrunedStates() {
+		return prunedStates;
+	}
+
+	/**
+	 * @return weight of the optimal Steiner tree
+	 */
+	public int getWeight() {
+		return optimalTreeWeight;
+	}
+
+	/**
+	 * @return sorted identifiers of the input edges of the optimal Steiner tree
+	 */
+	public List<Integer> getEdges() {
+		return steinerEdges;
+	}
+}
@@ -1,21 +1,30 @@
 package steiner;
 
 import java.util.ArrayList;
-import java.util.HashMap;
+import java.util.HashSet;
 import java.util.List;
-import java.util.Map;
+import java.util.Set;
 
 /**
  * Reduction method that completes metric closure incrementally
  */
 public class FastKernel extends Kernel {
-	private Map<Integer, DijkstraCache> dijkstraCache;
 	public FastKernel(SteinerGraph steinerGraph) {
-		super(steinerGraph);
+		this(steinerGraph, 1);
+	}
+
+	/**
+	 * @param steinerGraph graph to be reduced
+	 * @param threads number of threads running the searches of the metric closure
+	 */
+	public FastKernel(SteinerGraph steinerGraph, int threads) {
+		super(steinerGraph, threads);
 		computeRatios(steinerGraph.vertices.keySet());
-		dijkstraCache = new HashMap<>();
+		// Every contraction removes at least one terminal, so it creates at most |T| new vertices
+		int capacity = steinerGraph.vertexCount + steinerGraph.terminals.size();
+		boolean buckets = DijkstraCache.preferBuckets(steinerGraph);
 		for(Integer terminal : steinerGraph.terminals) {
-			addTerminalToCache(terminal);
+			closure.put(terminal, new DijkstraCache(terminal, capacity, buckets));
 		}
 	}
 	/**
@@ -27,67 +36,62 @@ public class FastKernel extends Kernel {
 		while(steinerGraph.terminals.size()!=1 && L != Integer.MAX_VALUE-1) {
 
 			while(!contractBestStar() && L != Integer.MAX_VALUE-1) {
-				if (L == 1073741824) {
-					L = Integer.MAX_VALUE-1;
-				}
-				else if (L != Integer.MAX_VALUE){
-					L *= 2;
-				}
+				L = nextThreshold(L);
 				computeClosure(L);
 			}
-			addTerminalToCache(steinerGraph.vertexCount-1);
-			saves.add(new SteinerGraph(steinerGraph));
 		}
 	}
 
 	/**
-	 * Completes all missing edges up to a threshold where at least one endpoint is terminal
+	 * Finds the next threshold of the doubling schedule at which some search settles a new vertex.
+	 * The thresholds in between would add no edge and change no ratio, so they are skipped.
+	 * @param L current threshold
+	 * @return next threshold, Integer.MAX_VALUE-1 if every search is finished
+	 */
+	private int nextThreshold(int L) {
+		int frontier = Integer.MAX_VALUE;
+		for(Integer source : steinerGraph.terminals) {
+			VertexQueue queue = closure.get(source).queue;
+			if (!queue.isEmpty()) frontier = Math.min(frontier, queue.peekKey());
+		}
+		do {
+			if (L == 1073741824) {
+				L = Integer.MAX_VALUE-1;
+			}
+			else {
+				L *= 2;
+			}
+		} while(L != Integer.MAX_VALUE-1 && L <= frontier);
+		return L;
+	}
+
+	/**
+	 * Completes all missing edges up to a threshold where at least one endpoint is terminal.
+	 * If the closure edges are read from the searches, they only have to be resumed.
 	 * @param threshold Upper bound on edges to be added
 	 */
 	private void computeClosure(int threshold) {
+		closureThreshold = threshold;
+		List<DijkstraCache> searches = new ArrayList<>();
 		for(Integer source : steinerGraph.terminals) {
-			DijkstraCache cache = dijkstraCache.get(source);
-			Integer u;
-			while((u = cache.queue.poll())!=null) {
-				if (cache.dist.get(u)>=threshold) {
-					cache.queue.add(u);
-					break;
-				}
-				for(Integer v : steinerGraph.vertices.get(u).neighbours) {
-					SteinerGraphEdge newEdge = steinerGraph.edges.get(new SortedPair(u, v));
-					int newDist = cache.dist.get(u) + newEdge.getWeight();
-					if (newDist < cache.dist.get(v)) {
-						cache.dist.put(v, newDist);
-						List<Integer> newID = new ArrayList<Integer>(cache.pathID.get(u));
-						newID.addAll(newEdge.getID());
-						cache.pathID.put(v, newID);
-						cache.queue.remove(v);
-						cache.queue.add(v);
-					}
-				}
+			searches.add(closure.get(source));
+		}
+		resumeSearches(searches, threshold);
+		// Only the endpoints of new or lighter edges can have different ratios
+		Set<Integer> changed = new HashSet<>();
+		for(DijkstraCache cache : searches) {
+			if (implicitClosure) {
+				addReached(cache, cache.settled, changed);
+				continue;
 			}
-			for(Integer v : cache.dist.keySet()) {
-				if (v == source) continue;
-				if (cache.dist.get(v) < threshold) {
-					steinerGraph.addEdge(source, v, cache.dist.get(v), cache.pathID.get(v));
+			for(Integer v : steinerGraph.vertices.keySet()) {
+				if (v.equals(cache.id)) continue;
+				if (cache.dist[v] < threshold && addClosureEdge(cache, v)) {
+					changed.add(cache.id);
+					changed.add(v);
 				}
 			}
 		}
-		computeRatios(steinerGraph.vertices.keySet());
-	}
-	private void addTerminalToCache(Integer terminal) {
-		for(DijkstraCache cache : dijkstraCache.values()) {
-			cache.dist.put(terminal, Integer.MAX_VALUE);
-			cache.pathID.put(terminal, new ArrayList<Integer>());
-		}
-		dijkstraCache.put(terminal, new DijkstraCache(terminal));
-		DijkstraCache newCache = dijkstraCache.get(terminal);
-		for(Integer v : steinerGraph.vertices.keySet()) {
-			newCache.dist.put(v, Integer.MAX_VALUE);
-			newCache.pathID.put(v, new ArrayList<Integer>());
-		}
-		newCache.dist.put(terminal, 0);
-		newCache.queue.addAll(steinerGraph.vertices.keySet());
+		computeRatios(changed);
 	}
-	
 }
@@ -0,0 +1,64 @@
+package steiner;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Relabels the live vertices of a SteinerGraph to 0..n-1 and its edges to 0..m-1.
+ * Contractions keep creating new vertex identifiers, so snapshots of the kernel may have far
+ * fewer vertices than their vertexCount. Every edge of the compact graph has a single identifier,
+ * results are mapped back to the identifiers of the input edges with expandEdges.
+ */
+public class GraphCompaction {
+	private SteinerGraph compactGraph;
+	private List<List<Integer>> compactToEdgeIDs;
+
+	public GraphCompaction(SteinerGraph steinerGraph) {
+		compactGraph = new SteinerGraph(steinerGraph.inputPath);
+		Map<Integer, Integer> vertexToCompact = new HashMap<>();
+		int n = 0;
+		for(Integer v : steinerGraph.vertices.keySet()) {
+			vertexToCompact.put(v, n);
+			compactGraph.vertices.put(n, new SteinerGraphVertex(n));
+			n++;
+		}
+		compactGraph.vertexCount = n;
+
+		compactToEdgeIDs = new ArrayList<>(steinerGraph.edges.size());
+		for(SteinerGraphEdge e : steinerGraph.edges.values()) {
+			compactGraph.defineEdge(vertexToCompact.get(e.getStart()), vertexToCompact.get(e.getEnd()), e.getWeight());
+			compactToEdgeIDs.add(e.getID());
+		}
+		for(Integer t : steinerGraph.terminals) {
+			compactGraph.setTerminal(vertexToCompact.get(t));
+		}
+	}
+
+	/**
+	 * @return graph with vertices 0..n-1 and edges 0..m-1
+	 */
+	public SteinerGraph getGraph() {
+		return compactGraph;
+	}
+
+	/**
+	 * Maps edges of the compact graph to the identifiers of the input edges they stand for
+	 * @param compactEdges identifiers of edges of the compact graph
+	 * @return sorted list of input edge identifiers
+	 */
+	public List<Integer> expandEdges(Collection<Integer> compactEdges) {
+		Set<Integer> ids = new HashSet<>();
+		for(Integer e : compactEdges) {
+			ids.addAll(compactToEdgeIDs.get(e));
+		}
+		List<Integer> expanded = new ArrayList<>(ids);
+		Collections.sort(expanded);
+		return expanded;
+	}
+}
@@ -0,0 +1,137 @@
+package steiner;
+
+import java.util.Arrays;
+
+/**
+ * Binary min-heap over the integers 0..capacity-1 with integer keys and decrease-key.
+ * Ties are broken by the smaller element, as in the comparators of the Dijkstra searches.
+ */
+public class IndexedHeap implements VertexQueue {
+	private final int[] heap;
+	private final int[] position;
+	private final int[] key;
+	private int size;
+
+	public IndexedHeap(int capacity) {
+		heap = new int[capacity];
+		position = new int[capacity];
+		key = new int[capacity];
+		Arrays.fill(position, -1);
+		size = 0;
+	}
+
+	public boolean isEmpty() {
+		return size == 0;
+	}
+
+	public int size() {
+		return size;
+	}
+
+	public boolean contains(int i) {
+		return position[i] != -1;
+	}
+
+	/**
+	 * Inserts an element or changes the key of an element already in the heap
+	 * @param i element
+	 * @param k new key
+	 */
+	public void push(int i, int k) {
+		if (position[i] == -1) {
+			heap[size] = i;
+			position[i] = size;
+			key[i] = k;
+			siftUp(size++);
+		}
+		else if (k < key[i]) {
+			key[i] = k;
+			siftUp(position[i]);
+		}
+		else {
+			key[i] = k;
+			siftDown(position[i]);
+		}
+	}
+
+	/**
+	 * @return element with the smallest key, without removing it
+	 */
+	public int peek() {
+		return heap[0];
+	}
+
+	public int peekKey() {
+		return key[heap[0]];
+	}
+
+	/**
+	 * Removes the element with the smallest key
+	 * @return the removed element
+	 */
+	public int poll() {
+		int top = heap[0];
+		remove(top);
+		return top;
+	}
+
+	/**
+	 * Removes an element if it is in the heap
+	 * @param i element
+	 */
+	public void remove(int i) {
+		int p = position[i];
+		if (p == -1) return;
+		position[i] = -1;
+		size--;
+		if (p == size) return;
+		int moved = heap[size];
+		heap[p] = moved;
+		position[moved] = p;
+		siftUp(p);
+		siftDown(position[moved]);
+	}
+
+	public int getKey(int i) {
+		return key[i];
+	}
+
+	public void clear() {
+		for(int p = 0; p < size; p++) {
+			position[heap[p]] = -1;
+		}
+		size = 0;
+	}
+
+	private boolean less(int i, int j) {
+		return key[i] < key[j] || (key[i] == key[j] && i < j);
+	}
+
+	private void siftUp(int p) {
+		int i = heap[p];
+		while(p > 0) {
+			int parent = (p - 1) >>> 1;
+			if (!less(i, heap[parent])) break;
+			heap[p] = heap[parent];
+			position[heap[p]] = p;
+			p = parent;
+		}
+		heap[p] = i;
+		position[i] = p;
+	}
+
+	private void siftDown(int p) {
+		int i = heap[p];
+		while(true) {
+			int child = 2 * p + 1;
+			if (child >= size) break;
+			if (child + 1 < size && less(heap[child + 1], heap[child])) child++;
+			if (!less(heap[child], i)) break;
+			heap[p] = heap[child];
+			position[heap[p]] = p;
+			p = child;
+		}
+		heap[p] = i;
+		position[i] = p;
+	}
+}
@@ -1,148 +1,421 @@
 package steiner;
 
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
 import java.util.HashMap;
 import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
+import java.util.TreeSet;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
 
 /**
  * Parent class for reduction methods that uses star contractions
  */
-public class Kernel {
+public abstract class Kernel {
 	protected SteinerGraph steinerGraph;
-	protected List<SteinerGraph> saves;
-	private Map<Integer, List<Double>> ratios;
-	protected StringBuilder contractionInfo;
-	protected Kernel(SteinerGraph steinerGraph) {
-	    contractionInfo = new StringBuilder();
+	protected ContractionLog saves;
+	private StarHeap stars;
+	private final List<ContractionListener> listeners;
+	protected final int threads;
+	private double batchEpsilon = -1;
+	protected boolean implicitClosure;
+	/** Searches of the live terminals, kept from one step to the next */
+	protected Map<Integer, DijkstraCache> closure;
+	/** Distance up to which every search has been resumed */
+	protected int closureThreshold;
+	// Scratch space of the searches and of the lightest edge to every terminal, null in via for an edge of the graph
+	private int[] scratch;
+	private int[] lightest;
+	private DijkstraCache[] via;
+	private int[] touched;
+	protected Kernel(SteinerGraph steinerGraph, int threads) {
+		listeners = new ArrayList<>();
+		closure = new HashMap<>();
+		scratch = new int[0];
+		lightest = new int[0];
+		this.threads = Math.max(1, threads);
 		this.steinerGraph = new SteinerGraph(steinerGraph);
-		saves = new ArrayList<>();
-		saves.add(new SteinerGraph(steinerGraph));
-		ratios = new HashMap<>();
-		for(Integer i : steinerGraph.vertices.keySet()) {
-			ratios.put(i, new ArrayList<>());
+		saves = new ContractionLog(this.steinerGraph);
+		stars = new StarHeap(steinerGraph.vertexCount);
+	}
+
+	/**
+	 * Makes every step contract a batch of stars instead of only the best one. The candidates are the best stars
+	 * of the centers whose ratio is at most (1 + epsilon) times the best ratio, they are taken in order and
+	 * skipped if they share a vertex with a star already in the batch. Fewer steps are needed, but the stars
+	 * after the first one may be worse than the best star once the first ones are contracted.
+	 * @param epsilon relative tolerance on the ratio, negative to contract one star per step
+	 */
+	public void setBatch(double epsilon) {
+		batchEpsilon = epsilon;
+	}
+
+	/**
+	 * Keeps the edges of the metric closure in the searches of the live terminals instead of adding them to the
+	 * graph, only the edges of the contracted stars are added. The graph, every snapshot and the contraction log
+	 * then hold O(n+m) edges instead of one per terminal and reached vertex, which dominates the memory on
+	 * instances with many terminals. A closure edge moved by a contraction would hold a path through the removed
+	 * vertices, so after every step the searches move such paths to the new terminals or drop them and find new
+	 * ones in the contracted graph.
+	 * The closure edges are then shortest paths found after the contraction rather than moved copies of earlier
+	 * ones, so different stars may be contracted.
+	 * @param implicit true to read the closure edges from the searches
+	 */
+	public void setImplicitClosure(boolean implicit) {
+		implicitClosure = implicit;
+		// The vertices settled by a search are the ones whose closure edges changed
+		for(DijkstraCache search : closure.values()) {
+			search.settled = implicit ? new ArrayList<>() : null;
 		}
 	}
 
 	/**
-	 * Contracts the best star among all vertices.
+	 * Contracts stars until a single terminal is left, every step is recorded in the contraction log
+	 */
+	public abstract void contract();
+
+	/**
+	 * @param listener receives every contraction from now on
+	 */
+	public void addContractionListener(ContractionListener listener) {
+		listeners.add(listener);
+	}
+
+	/**
+	 * Contracts the best star among all vertices, or a batch of disjoint stars close to it, see setBatch.
+	 * The best star of every center is kept in a heap which is updated whenever the ratios of the center are recomputed.
 	 * @return returns false if no star with finite ratio was contracted, otherwise true 
 	 */
 	protected boolean contractBestStar() {
-		Integer id = null;
-		Pair<Double, List<SteinerGraphEdge>> tmp;
-		Pair<Double, List<SteinerGraphEdge>> min = new Pair<Double, List<SteinerGraphEdge>>(Double.MAX_VALUE, new ArrayList<>());
-		for(Integer i : steinerGraph.vertices.keySet()) {
-			tmp = bestStar(i);
-			if (tmp.getFirst() < min.getFirst() || (tmp.getFirst().equals(min.getFirst()) && tmp.getSecond().size() > min.getSecond().size())) {
-				min = tmp;
-				id = i;
+		if (stars.isEmpty()) return false;
+		List<Integer> centers;
+		if (batchEpsilon < 0) centers = Collections.singletonList(stars.peek());
+		else centers = stars.peekUpTo(stars.getRatio(stars.peek()) * (1 + batchEpsilon));
+		List<List<SteinerGraphEdge>> batch = new ArrayList<>();
+		Set<Integer> used = new HashSet<>();
+		for(Integer id : centers) {
+			List<SteinerGraphEdge> star;
+			if (implicitClosure) star = getClosureEdges(id, stars.getStarSize(id));
+			else {
+				star = new ArrayList<>(stars.getStarSize(id));
+				for(SteinerGraphEdge e : steinerGraph.getSortedTerminalEdges(id)) {
+					if (star.size() == stars.getStarSize(id)) break;
+					star.add(e);
+				}
 			}
+			if (centers.size() > 1) {
+				Set<Integer> starVertices = steinerGraph.getStarVertices(star);
+				if (!Collections.disjoint(used, starVertices)) continue;
+				used.addAll(starVertices);
+			}
+			if (!listeners.isEmpty()) {
+				int[] starts = new int[star.size()];
+				int[] ends = new int[star.size()];
+				for(int i = 0; i < star.size(); i++) {
+					starts[i] = star.get(i).getStart();
+					ends[i] = star.get(i).getEnd();
+				}
+				ContractionEvent event = new ContractionEvent(saves.size(), id, starts, ends, stars.getRatio(id), steinerGraph.vertexCount + batch.size());
+				for(ContractionListener listener : listeners) {
+					listener.contracted(event);
+				}
+			}
+			batch.add(star);
 		}
-		if (id != null) {
-		    contractionInfo.append("Contraction: #" + saves.size());
-		    contractionInfo.append("\nStar edges: ");
-		    for(SteinerGraphEdge e : min.getSecond()){
-		        contractionInfo.append("{" + e.getStart() + "," + e.getEnd() + "} ");
-            }
-            contractionInfo.append("\nStar ratio: " + min.getFirst() + "\nNew Terminal: #" + steinerGraph.vertexCount + "\n\n");
-			contractStar(min.getSecond());
-			return true;
-		}
-		return false;
+		contractStars(batch);
+		return true;
 	}
 
 	/**
-	 * Contracts a star with given center and edges
-	 * @param starEdges list of edges of the star
+	 * Contracts disjoint stars, records them as one step and updates the searches and the ratios of the
+	 * affected centers once. Closure edges of the stars that are not in the graph are added first.
+	 * @param batch lists of edges of the stars
 	 */
-	private void contractStar(List<SteinerGraphEdge> starEdges) {
-		steinerGraph.vertices.put(steinerGraph.vertexCount, new SteinerGraphVertex(steinerGraph.vertexCount));
-		steinerGraph.setTerminal(steinerGraph.vertexCount);
-		ratios.put(steinerGraph.vertexCount, new ArrayList<>());
-		Set<Integer> starVertices = new HashSet<Integer>();
-		for(SteinerGraphEdge starEdge : starEdges) {
-			for(Integer edgeID : starEdge.getID()) {
-				if (steinerGraph.vertices.containsKey(steinerGraph.IDToEdge.get(edgeID).getStart())) {
-					starVertices.add(steinerGraph.IDToEdge.get(edgeID).getStart());
-				}
-				if (steinerGraph.vertices.containsKey(steinerGraph.IDToEdge.get(edgeID).getEnd())) {
-					starVertices.add(steinerGraph.IDToEdge.get(edgeID).getEnd());
-				}
-			}
-			steinerGraph.steinerTreeEdges.addAll(starEdge.getID());
-		}
-		Set<Integer> outsideNeighbours = new HashSet<Integer>();
-		for(Integer starVertex : starVertices) {
-			for(Integer neighbour : steinerGraph.vertices.get(starVertex).neighbours) {
-				if(!starVertices.contains(neighbour)) {
-					outsideNeighbours.add(neighbour);
-					SortedPair p = new SortedPair(starVertex, neighbour);
-					SteinerGraphEdge outEdge = steinerGraph.edges.get(p);
-					steinerGraph.edges.remove(p);
-					steinerGraph.addEdge(steinerGraph.vertexCount, neighbour, outEdge.getWeight(), outEdge.getID());
-					for(Integer i : outEdge.getID()) {
-						SteinerGraphEdge e = steinerGraph.IDToEdge.get(i);
-						if (e.getStart().equals(starVertex)) e.setStart(steinerGraph.vertexCount);
-						if (e.getEnd().equals(starVertex)) e.setEnd(steinerGraph.vertexCount);
+	private void contractStars(List<List<SteinerGraphEdge>> batch) {
+		if (implicitClosure) {
+			for(List<SteinerGraphEdge> starEdges : batch) {
+				for(int i = 0; i < starEdges.size(); i++) {
+					SteinerGraphEdge e = starEdges.get(i);
+					if (steinerGraph.addEdge(e.getStart(), e.getEnd(), e.getWeight(), e.getID())) {
+						saves.addEdge(e.getStart(), e.getEnd(), e.getWeight(), e.getID());
 					}
+					starEdges.set(i, steinerGraph.edges.get(new SortedPair(e.getStart(), e.getEnd())));
 				}
 			}
 		}
+		List<Integer> newTerminals = new ArrayList<>(batch.size());
+		List<Set<Integer>> contracted = new ArrayList<>(batch.size());
+		for(List<SteinerGraphEdge> starEdges : batch) {
+			newTerminals.add(steinerGraph.vertexCount);
+			Set<Integer> starVertices = steinerGraph.contractStar(starEdges);
+			for(Integer starVertex : starVertices) {
+				stars.remove(starVertex);
+			}
+			contracted.add(starVertices);
+		}
+		saves.addContraction(batch, steinerGraph);
 
-		for(Integer starVertex : starVertices){
-			steinerGraph.removeVertex(starVertex);
+		// The neighbours of the new terminals are exactly the vertices that lost edges to the stars
+		Set<Integer> changed = new HashSet<>();
+		for(Integer newTerminal : newTerminals) {
+			changed.addAll(steinerGraph.vertices.get(newTerminal).neighbours);
+			changed.add(newTerminal);
 		}
+		if (!closure.isEmpty()) updateSearches(newTerminals, contracted, changed);
+		computeRatios(changed);
+	}
 
-		for(Integer v : outsideNeighbours) {
-			computeRatio(v);
+	/**
+	 * Retires the searches of the contracted terminals and merges them into the search of each new terminal
+	 * instead of starting it from scratch. If the closure edges are read from the searches, the other searches
+	 * move their paths through the removed vertices to the new terminals. All of them are resumed right away, so
+	 * that every search stays settled up to the same threshold.
+	 * @param newTerminals terminals created by the step
+	 * @param starVertices vertices removed by each contraction
+	 * @param changed vertices whose closure edges may have changed are added
+	 */
+	private void updateSearches(List<Integer> newTerminals, List<Set<Integer>> starVertices, Set<Integer> changed) {
+		if (scratch.length < closure.values().iterator().next().dist.length) {
+			scratch = new int[closure.values().iterator().next().dist.length];
+		}
+		List<DijkstraCache> resumed = new ArrayList<>();
+		Map<Integer, Integer> image = new HashMap<>();
+		for(int k = 0; k < newTerminals.size(); k++) {
+			for(Integer v : starVertices.get(k)) {
+				image.put(v, newTerminals.get(k));
+			}
 		}
-		computeRatio(steinerGraph.vertexCount);
-		steinerGraph.vertexCount++;
+		for(int k = 0; k < newTerminals.size(); k++) {
+			List<DijkstraCache> retired = new ArrayList<>();
+			for(Integer v : new TreeSet<>(starVertices.get(k))) {
+				DijkstraCache search = closure.remove(v);
+				if (search != null) retired.add(search);
+			}
+			DijkstraCache search = retired.remove(0);
+			List<Integer> moved = search.merge(newTerminals.get(k), retired, image, newTerminals, steinerGraph, closureThreshold, scratch);
+			if (implicitClosure) changed.addAll(moved);
+			resumed.add(search);
+		}
+		if (implicitClosure) {
+			for(DijkstraCache search : closure.values()) {
+				List<Integer> moved = search.reroute(image, newTerminals, steinerGraph, closureThreshold, scratch);
+				if (moved == null) continue;
+				// The search lost its closure edges to the removed terminals
+				changed.add(search.id);
+				changed.addAll(moved);
+				resumed.add(search);
+			}
+		}
+		for(int k = 0; k < newTerminals.size(); k++) {
+			closure.put(newTerminals.get(k), resumed.get(k));
+		}
+		resumeSearches(resumed, closureThreshold);
+		if (!implicitClosure) return;
+		for(int k = 0; k < resumed.size(); k++) {
+			DijkstraCache search = resumed.get(k);
+			List<Integer> reached = search.settled;
+			if (k < newTerminals.size()) {
+				// Every closure edge of a new terminal is new
+				reached = new ArrayList<>();
+				for(Integer v : steinerGraph.vertices.keySet()) {
+					if (search.dist[v] < closureThreshold) reached.add(v);
+				}
+			}
+			addReached(search, reached, changed);
+		}
+		changed.retainAll(steinerGraph.vertices.keySet());
 	}
 
 	/**
-	 * Finds the best ratio star center at a given index
-	 * @param v star center
-	 * @return a pair where the first element is ratio of the star,
-	 * and the second element is the corresponding list of edges.
+	 * Adds the vertices whose closure edge to the source of a search may have changed, and the source
+	 * if one of them is a terminal
+	 * @param search search from a live terminal
+	 * @param reached vertices settled by the search
+	 * @param changed set of changed vertices
 	 */
-	private Pair<Double, List<SteinerGraphEdge>> bestStar(Integer v) {
-		List<SteinerGraphEdge> terminalEdges = steinerGraph.getTerminalEdges(v);
-		Double ratio = Double.POSITIVE_INFINITY;
-		List<SteinerGraphEdge> star = new ArrayList<>();
-		for(int i = 0; i < terminalEdges.size(); i++) {
-			if(ratios.get(v).get(i) <= ratio) {
-				ratio = ratios.get(v).get(i);
-				star = terminalEdges.subList(0, i+1);
+	protected void addReached(DijkstraCache search, List<Integer> reached, Set<Integer> changed) {
+		for(Integer v : reached) {
+			if (v.equals(search.id)) continue;
+			changed.add(v);
+			if (steinerGraph.vertices.get(v).isTerminal) changed.add(search.id);
+		}
+	}
+
+	/**
+	 * Resumes every search up to a threshold. The searches only read the graph, so with more than one thread
+	 * they run concurrently on a work-stealing pool. Closure edges are added only after all searches finished,
+	 * so the result does not depend on the number of threads.
+	 * @param searches searches from terminals
+	 * @param threshold distance at which the searches are frozen
+	 */
+	protected void resumeSearches(List<DijkstraCache> searches, int threshold) {
+		resumeSearches(null, searches, threshold);
+	}
+
+	/**
+	 * Resumes every search up to a threshold on a read-only view of the graph, which is shared by all threads
+	 * @param graph view of the current graph, null to search the graph itself
+	 * @param searches searches from terminals
+	 * @param threshold distance at which the searches are frozen
+	 */
+	protected void resumeSearches(CSRGraph graph, List<DijkstraCache> searches, int threshold) {
+		if (threads == 1 || searches.size() < 2) {
+			for(DijkstraCache search : searches) {
+				resume(search, graph, threshold);
 			}
+			return;
 		}
-		return new Pair<>(ratio, star);
+		ForkJoinPool pool = new ForkJoinPool(threads);
+		try {
+			pool.invoke(new SearchTask(graph, searches, threshold, 0, searches.size()));
+		}
+		finally {
+			pool.shutdown();
+		}
+	}
+
+	private void resume(DijkstraCache search, CSRGraph graph, int threshold) {
+		if (graph == null) search.resume(steinerGraph, threshold);
+		else search.resume(graph, threshold);
+	}
+
+	/**
+	 * Adds an edge of the metric closure and records it in the contraction log. The edge identifiers
+	 * of the path are only collected if the edge is missing or lighter than the existing one.
+	 * @param search shortest path search from a terminal
+	 * @param v vertex reached by the search
+	 * @return true if the edge was added or made lighter
+	 */
+	protected boolean addClosureEdge(DijkstraCache search, Integer v) {
+		int weight = search.dist[v];
+		SteinerGraphEdge existing = steinerGraph.edges.get(new SortedPair(search.id, v));
+		if (existing != null && existing.getWeight() <= weight) return false;
+		List<Integer> id = search.getPathIDs(v);
+		if (!steinerGraph.addEdge(search.id, v, weight, id)) return false;
+		saves.addEdge(search.id, v, weight, id);
+		return true;
 	}
 
 	/**
-	 * Computes the ratios of a star centered at a given index
+	 * Computes the ratios of the stars centered at a given index and updates its entry in the heap.
+	 * The star of the i lightest terminal edges has ratio (sum of their weights) / (i - 1), or / i if the center
+	 * is a terminal. Among stars of equal ratio the one with more edges is preferred.
 	 * @param index center of star
 	 */
 	private void computeRatio(Integer index) {
 		SteinerGraphVertex v = steinerGraph.vertices.get(index);
-		if(!ratios.get(index).isEmpty()) ratios.get(index).clear();
-		List<SteinerGraphEdge> terminalEdges = steinerGraph.getTerminalEdges(v.id);
-		for(int i = 0; i < terminalEdges.size(); i++) {
-			if (i == 0) ratios.get(index).add(terminalEdges.get(0).getWeight().doubleValue());
-			else {
-				ratios.get(index).add(ratios.get(index).get(ratios.get(index).size()-1) + terminalEdges.get(i).getWeight());
-			}
-		}
 		int z = 0;
 		if (v.isTerminal) z = 1;
-		for(int i = 0; i < terminalEdges.size(); i++) {
-			ratios.get(index).set(i, ratios.get(index).get(i)/(i+z));
+		double sum = 0;
+		double ratio = Double.POSITIVE_INFINITY;
+		int size = 0;
+		int i = 0;
+		for(int weight : getTerminalWeights(index)) {
+			sum += weight;
+			double r = sum / (i + z);
+			i++;
+			if (r <= ratio) {
+				ratio = r;
+				size = i;
+			}
 		}
+		if (ratio < Double.POSITIVE_INFINITY) stars.push(index, ratio, size);
+		else stars.remove(index);
 	}
 	
+	/**
+	 * @param index common point of terminal edges
+	 * @return weights of the terminal edges in increasing order, closure edges included
+	 */
+	private int[] getTerminalWeights(Integer index) {
+		if (implicitClosure) {
+			int count = collectTerminalEdges(index);
+			int[] weights = new int[count];
+			for(int i = 0; i < count; i++) {
+				int t = touched[i];
+				weights[i] = lightest[t];
+				lightest[t] = Integer.MAX_VALUE;
+				via[t] = null;
+			}
+			Arrays.sort(weights);
+			return weights;
+		}
+		int[] weights = new int[steinerGraph.getSortedTerminalEdges(index).size()];
+		int i = 0;
+		for(SteinerGraphEdge e : steinerGraph.getSortedTerminalEdges(index)) {
+			weights[i++] = e.getWeight();
+		}
+		return weights;
+	}
+
+	/**
+	 * Finds the lightest edge from a vertex to every terminal, either an edge of the graph or a closure edge
+	 * read from the searches. On equal weights the edge of the graph is kept, as addEdge would.
+	 * The terminals are left in touched, their edges in lightest and via.
+	 * @param index common point of terminal edges
+	 * @return number of terminals found
+	 */
+	private int collectTerminalEdges(Integer index) {
+		if (lightest.length < steinerGraph.vertexCount) {
+			lightest = new int[2 * steinerGraph.vertexCount];
+			Arrays.fill(lightest, Integer.MAX_VALUE);
+			via = new DijkstraCache[lightest.length];
+			touched = new int[lightest.length];
+		}
+		int count = 0;
+		for(SteinerGraphEdge e : steinerGraph.getSortedTerminalEdges(index)) {
+			int t = e.getStart().equals(index) ? e.getEnd() : e.getStart();
+			lightest[t] = e.getWeight();
+			touched[count++] = t;
+		}
+		DijkstraCache own = closure.get(index);
+		for(DijkstraCache search : closure.values()) {
+			int t = search.id;
+			if (t == index) continue;
+			// The closure edge of two terminals is found by both searches
+			int d = search.dist[index];
+			DijkstraCache found = search;
+			if (own != null && own.dist[t] < d) {
+				d = own.dist[t];
+				found = own;
+			}
+			if (d >= closureThreshold || d >= lightest[t]) continue;
+			if (lightest[t] == Integer.MAX_VALUE) touched[count++] = t;
+			lightest[t] = d;
+			via[t] = found;
+		}
+		return count;
+	}
+
+	/**
+	 * Terminal edges of a vertex in the order of SteinerGraph.getTerminalEdges, closure edges included.
+	 * Closure edges are built with the identifiers of their paths, they are added to the graph only if their
+	 * star is contracted.
+	 * @param index common point of terminal edges
+	 * @param limit number of edges needed
+	 * @return the lightest terminal edges
+	 */
+	private List<SteinerGraphEdge> getClosureEdges(Integer index, int limit) {
+		int count = collectTerminalEdges(index);
+		List<SteinerGraphEdge> edges = new ArrayList<>(count);
+		for(int i = 0; i < count; i++) {
+			int t = touched[i];
+			if (via[t] == null) edges.add(steinerGraph.edges.get(new SortedPair(index, t)));
+			else if (via[t].id.equals(t)) edges.add(new SteinerGraphEdge(t, index, lightest[t], via[t].getPathIDs(index)));
+			else edges.add(new SteinerGraphEdge(index, t, lightest[t], via[t].getPathIDs(t)));
+			lightest[t] = Integer.MAX_VALUE;
+			via[t] = null;
+		}
+		edges.sort(Comparator.comparing(SteinerGraphEdge::getWeight).thenComparing(e -> e.getID().get(0))
+				.thenComparing(e -> e.getStart().equals(index) ? e.getEnd() : e.getStart()));
+		return new ArrayList<>(edges.subList(0, Math.min(limit, count)));
+	}
+
 	/**
 	 * Compute star ratios for a set of vertices
 	 * @param s Set of star centers
@@ -153,11 +426,41 @@ public class Kernel {
 		}
 	}
 	
-	public List<SteinerGraph> getSnapshots() {
+	/**
+	 * @return log from which the snapshot after every contraction can be rebuilt
+	 */
+	public ContractionLog getSnapshots() {
 		return saves;
 	}
 
-	public String getContractionInfos(){
-        return contractionInfo.toString();
-    }
+	/**
+	 * Resumes a range of searches, the range is split until single searches are left
+	 */
+	private class SearchTask extends RecursiveAction {
+		private static final long serialVersionUID = 1L;
+
+		private final CSRGraph graph;
+		private final List<DijkstraCache> searches;
+		private final int threshold;
+		private final int from;
+		private final int to;
+
+		SearchTask(CSRGraph graph, List<DijkstraCache> searches, int threshold, int from, int to) {
+			this.graph = graph;
+			this.searches = searches;
+			this.threshold = threshold;
+			this.from = from;
+			this.to = to;
+		}
+
+		@Override
+		protected void compute() {
+			if (to - from == 1) {
+				resume(searches.get(from), graph, threshold);
+				return;
+			}
+			int middle = (from + to) >>> 1;
+			invokeAll(new SearchTask(graph, searches, threshold, from, middle), new SearchTask(graph, searches, threshold, middle, to));
+		}
+	}
 }
@@ -37,6 +37,12 @@ public class Main {
 		Boolean continuous = false;
 		Boolean longOut = false;
 		Boolean slowKernel = false;
+		Integer threads = 1;
+		Double batch = null;
+		Boolean implicitClosure = false;
+		String tracePath = null;
+		Boolean emv = false;
+		Boolean dijkstraSteiner = false;
 
 		for(int i = 0; i < args.length; i++){
 			switch (args[i]) {
@@ -94,6 +100,47 @@ public class Main {
 				case ("-slowkernel"):
 					slowKernel = true;
 					break;
+				case ("-implicit"):
+					implicitClosure = true;
+					break;
+				case ("-emv"):
+					emv = true;
+					break;
+				case ("-ds"):
+				case ("-dijkstrasteiner"):
+					dijkstraSteiner = true;
+					break;
+				case ("-th"):
+				case ("-threads"):
+					i++;
+					if (i < args.length) {
+						try {
+							threads = Integer.parseInt(args[i]);
+						}
+						catch (NumberFormatException e){
+							System.out.println("Invalid argument \"" + args[i] + "\" to option \"" + args[i-1] + "\"");
+							System.out.println("Argument must be an integer");
+						}
+					}
+					break;
+				case ("-batch"):
+					i++;
+					if (i < args.length) {
+						try {
+							batch = Double.parseDouble(args[i]);
+						}
+						catch (NumberFormatException e){
+							System.out.println("Invalid argument \"" + args[i] + "\" to option \"" + args[i-1] + "\"");
+							System.out.println("Argument must be a number");
+						}
+					}
+					break;
+				case ("-trace"):
+					i++;
+					if (i < args.length) {
+						tracePath = args[i];
+					}
+					break;
 				case ("-a"):
 				case ("-accuracy"):
 					i++;
@@ -256,19 +303,31 @@ public class Main {
 				}
 				System.out.println();
 			}
-			List<SteinerGraph> saves;
-			String contractionInfo;
-			if (slowKernel){
-				SlowKernel kernel = new SlowKernel(processedGraph);
-				kernel.contract();
-				saves = kernel.getSnapshots();
-				contractionInfo = kernel.getContractionInfos();
+			ContractionLog saves;
+			ContractionReport contractionInfo = new ContractionReport();
+			ContractionTrace trace = null;
+			if (tracePath != null) {
+				try {
+					trace = new ContractionTrace(tracePath);
+				}
+				catch (IOException e){
+					e.printStackTrace();
+				}
 			}
-			else {
-				FastKernel kernel = new FastKernel(processedGraph);
-				kernel.contract();
-				saves = kernel.getSnapshots();
-				contractionInfo = kernel.getContractionInfos();
+			Kernel kernel = slowKernel ? new SlowKernel(processedGraph, threads) : new FastKernel(processedGraph, threads);
+			if (batch != null) kernel.setBatch(batch);
+			if (implicitClosure) kernel.setImplicitClosure(true);
+			if (!silent && longOut) kernel.addContractionListener(contractionInfo);
+			if (trace != null) kernel.addContractionListener(trace);
+			kernel.contract();
+			saves = kernel.getSnapshots();
+			if (trace != null) {
+				try {
+					trace.close();
+				}
+				catch (IOException e){
+					e.printStackTrace();
+				}
 			}
 
 			if (!silent){
@@ -288,9 +347,8 @@ public class Main {
 
 				while ((selectedIndex == Integer.MAX_VALUE) && !continuous) {
 					for (int i = 0; i < saves.size(); i++) {
-						SteinerGraph save = saves.get(i);
-						tCutoffToSave.put(save.terminals.size(), i);
-						sCutoffToSave.put(save.vertices.size() - save.terminals.size() + preProcessSteinerDifference, i);
+						tCutoffToSave.put(saves.getTerminalCount(i), i);
+						sCutoffToSave.put(saves.getVertexCount(i) - saves.getTerminalCount(i) + preProcessSteinerDifference, i);
 					}
 					if ((accuracy == null) && (sCutOff == null) && (tCutOff == null)) {
 						if (!silent) {
@@ -444,28 +502,6 @@ public class Main {
 					}
 				}
 			}
-			if (!silent && (selectedIndex != saves.size()-1)) {
-                for (int i = 0; i < iplen; i++) {
-                    System.out.print("=");
-                }
-                System.out.println();
-                if ((iplen - 34 / 2) > 0) {
-                    for (int i = 0; i < (iplen - 24) / 2; i++) {
-                        System.out.print("=");
-                    }
-                }
-                System.out.print(" Running Dreyfus-Wagner ");
-                if ((iplen - 34 / 2) > 0) {
-                    for (int i = 0; i < (iplen - 24) / 2; i++) {
-                        System.out.print("=");
-                    }
-                }
-                System.out.println();
-                for (int i = 0; i < iplen; i++) {
-                    System.out.print("=");
-                }
-                System.out.println();
-            }
             List<Integer> selectedIndices = new ArrayList<>();
 			if (continuous) {
 				for (int i = saves.size()-1; i > -1 ; i--) {
@@ -474,22 +510,55 @@ public class Main {
 			}
 			else selectedIndices.add(selectedIndex);
 
+			// Snapshots are rebuilt from the contraction log, the last one is needed for every upper bound
+			SteinerGraph lastSave = saves.get(saves.size() - 1);
 
 			for(Integer index : selectedIndices) {
 			    if (continuous) System.out.println((index+1) + ":");
-				SteinerGraph selectedSteinerGraph = new SteinerGraph(saves.get(index));
+				SteinerGraph save = saves.get(index);
+				SteinerGraph selectedSteinerGraph = new SteinerGraph(save);
 
 				int exactPart, approxPart;
 				List<Integer> exactTree = new ArrayList<>();
-				List<Integer> approxTree = saves.get(index).getSteinerTreeEdges();
+				List<Integer> approxTree = save.getSteinerTreeEdges();
 
 				if (index == 0) approxPart = 0;
 				else approxPart = selectedSteinerGraph.getSteinerTreeWeight();
 
 				if (index == saves.size() - 1) exactPart = 0;
 				else {
-					DreyfusWagner fpt = new DreyfusWagner();
+					ExactSolver fpt;
+					// Without an explicit choice, the algorithm expected to take fewer steps on the snapshot is used
+					int snapshotSteinerVertices = selectedSteinerGraph.vertices.size() - selectedSteinerGraph.terminals.size();
+					if (dijkstraSteiner) fpt = new DijkstraSteiner();
+					else if (emv) fpt = new EricksonMonmaVeinott();
+					else if (SteinerVertexEnumeration.preferEnumeration(snapshotSteinerVertices, selectedSteinerGraph.terminals.size())) fpt = new SteinerVertexEnumeration();
+					else fpt = new DreyfusWagner(threads);
+					if (!silent) {
+						String banner = " Running " + fpt.getName() + " ";
+						for (int i = 0; i < iplen; i++) {
+							System.out.print("=");
+						}
+						System.out.println();
+						for (int i = 0; i < (iplen - banner.length()) / 2; i++) {
+							System.out.print("=");
+						}
+						System.out.print(banner);
+						for (int i = 0; i < (iplen - banner.length()) / 2; i++) {
+							System.out.print("=");
+						}
+						System.out.println();
+						for (int i = 0; i < iplen; i++) {
+							System.out.print("=");
+						}
+						System.out.println();
+					}
+					// The contractions after the selected snapshot form a feasible solution of it
+					if (lastSave.terminals.size() <= 1) {
+						fpt.setUpperBound(lastSave.getSteinerTreeWeight() - selectedSteinerGraph.getSteinerTreeWeight());
+					}
 					fpt.solve(selectedSteinerGraph);
+					if (!silent && longOut) System.out.println("Exact part pruned states: " + fpt.getPrunedStates());
 					exactPart = fpt.getWeight();
 					exactTree = fpt.getEdges();
 				}
@@ -42,9 +42,7 @@ public class PreProcessor {
             Integer neighbourTwo = graph.vertices.get(new ArrayList<>(graph.vertices.get(middle).neighbours).get(1)).id;
             SteinerGraphEdge edgeOne = graph.edges.get(new SortedPair(middle, neighbourOne));
             SteinerGraphEdge edgeTwo = graph.edges.get(new SortedPair(middle, neighbourTwo));
-            List<Integer> tempID = new ArrayList<>();
-            tempID.addAll(edgeOne.getID());
-            tempID.addAll(edgeTwo.getID());
+            EdgePath tempID = EdgePath.concat(edgeOne.getID(), edgeTwo.getID());
             graph.addEdge(neighbourOne, neighbourTwo, edgeOne.getWeight() + edgeTwo.getWeight(), tempID);
             graph.removeVertex(middle);
             degreeTwoSVs.add(middle);
@@ -1,12 +1,7 @@
 package steiner;
 
 import java.util.ArrayList;
-import java.util.Comparator;
-import java.util.HashMap;
 import java.util.List;
-import java.util.Map;
-import java.util.PriorityQueue;
-import java.util.Queue;
 
 /**
  * Reduction method that completes metric closure at once
@@ -14,7 +9,15 @@ import java.util.Queue;
 public class SlowKernel extends Kernel {
 
 	public SlowKernel(SteinerGraph steinerGraph) {
-		super(steinerGraph);
+		this(steinerGraph, 1);
+	}
+
+	/**
+	 * @param steinerGraph graph to be reduced
+	 * @param threads number of threads running the searches of the metric closure
+	 */
+	public SlowKernel(SteinerGraph steinerGraph, int threads) {
+		super(steinerGraph, threads);
 	}
 
 	/**
@@ -22,50 +25,34 @@ public class SlowKernel extends Kernel {
 	 */
 	public void contract() {
 		computeClosure();
-		while(contractBestStar()) {
-			saves.add(new SteinerGraph(steinerGraph));
-		}
+		while(contractBestStar());
     }
 
 	/**
-	 * Completes all missing edges where at least one endpoint is terminal
+	 * Completes all missing edges where at least one endpoint is terminal.
+	 * If the closure edges are read from the searches, the searches are kept for the whole reduction instead.
 	 */
 	public void computeClosure() {
+		List<DijkstraCache> searches = new ArrayList<>();
+		boolean buckets = DijkstraCache.preferBuckets(steinerGraph);
+		// Kept searches also reach the new terminals, every contraction creates at most one per terminal
+		int capacity = steinerGraph.vertexCount;
+		if (implicitClosure) capacity += steinerGraph.terminals.size();
 		for(Integer source : steinerGraph.terminals) {
-			Map<Integer, Integer> dist = new HashMap<>();
-			Map<Integer, List<Integer>> pathID = new HashMap<>();
-			Queue<Integer> queue = new PriorityQueue<Integer>(new Comparator<Integer>() {
-				public int compare(Integer i, Integer j) {
-					if (dist.get(i)-dist.get(j)!=0) {
-						return dist.get(i)-dist.get(j);
-					}
-					return i-j;
-				}
-			});
-			for(Integer i : steinerGraph.vertices.keySet()) {
-				dist.put(i, Integer.MAX_VALUE);
-				pathID.put(i, new ArrayList<Integer>());
-			}
-			dist.put(source, 0);
-			queue.addAll(steinerGraph.vertices.keySet());
-			Integer u;
-			while((u = queue.poll())!=null) {
-				for(Integer v : steinerGraph.vertices.get(u).neighbours) {
-					SteinerGraphEdge newEdge = steinerGraph.edges.get(new SortedPair(u, v));
-					int newDist = dist.get(u) + newEdge.getWeight();
-					if (newDist < dist.get(v)) {
-						dist.put(v, newDist);
-						List<Integer> newID = new ArrayList<Integer>(pathID.get(u));
-						newID.addAll(newEdge.getID());
-						pathID.put(v, newID);
-						queue.remove(v);
-						queue.add(v);
-					}
-				}
+			searches.add(new DijkstraCache(source, capacity, buckets));
+		}
+		// The graph does not change until every search finished, so they all run on one compact view of it
+		resumeSearches(new CSRGraph(steinerGraph), searches, Integer.MAX_VALUE);
+		closureThreshold = Integer.MAX_VALUE;
+		for(DijkstraCache search : searches) {
+			if (implicitClosure) {
+				search.settled = new ArrayList<>();
+				closure.put(search.id, search);
+				continue;
 			}
-			for(Integer v : dist.keySet()) {
-				if(dist.get(v) == Integer.MAX_VALUE) continue;
-				steinerGraph.addEdge(source, v, dist.get(v), pathID.get(v));
+			for(Integer v : steinerGraph.vertices.keySet()) {
+				if(v.equals(search.id) || search.dist[v] == Integer.MAX_VALUE) continue;
+				addClosureEdge(search, v);
 			}
 		}
 		computeRatios(steinerGraph.vertices.keySet());
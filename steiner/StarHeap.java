@@ -0,0 +1,159 @@
+package steiner;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Indexed binary min-heap of star centers keyed by the ratio of their best star.
+ * Ties are broken by the larger star, then by the smaller center. Centers are vertex identifiers,
+ * the arrays grow as contractions create new vertices.
+ * The scan over all vertices this heap replaced kept the first of equal stars in the iteration order of the
+ * vertex map, which is not the order of the identifiers once new terminals exceed the map's capacity,
+ * so among stars of equal ratio and size the contraction order may differ from it.
+ */
+public class StarHeap {
+	private int[] heap;
+	private int[] position;
+	private double[] ratio;
+	private int[] starSize;
+	private int size;
+
+	public StarHeap(int capacity) {
+		capacity = Math.max(capacity, 1);
+		heap = new int[capacity];
+		position = new int[capacity];
+		ratio = new double[capacity];
+		starSize = new int[capacity];
+		Arrays.fill(position, -1);
+		size = 0;
+	}
+
+	public boolean isEmpty() {
+		return size == 0;
+	}
+
+	public boolean contains(int v) {
+		return v < position.length && position[v] != -1;
+	}
+
+	/**
+	 * Inserts a center or changes the best star of a center already in the heap
+	 * @param v star center
+	 * @param r ratio of its best star
+	 * @param s number of edges of its best star
+	 */
+	public void push(int v, double r, int s) {
+		ensureCapacity(v);
+		ratio[v] = r;
+		starSize[v] = s;
+		if (position[v] == -1) {
+			heap[size] = v;
+			position[v] = size;
+			siftUp(size++);
+		}
+		else {
+			siftUp(position[v]);
+			siftDown(position[v]);
+		}
+	}
+
+	/**
+	 * @return center of the best star, without removing it
+	 */
+	public int peek() {
+		return heap[0];
+	}
+
+	public double getRatio(int v) {
+		return ratio[v];
+	}
+
+	public int getStarSize(int v) {
+		return starSize[v];
+	}
+
+	/**
+	 * Lists the centers whose best star has ratio at most a bound, only the subtrees of the heap
+	 * with a small enough root are visited
+	 * @param bound largest ratio listed
+	 * @return centers ordered from the best star
+	 */
+	public List<Integer> peekUpTo(double bound) {
+		List<Integer> centers = new ArrayList<>();
+		int[] stack = new int[Math.max(size, 1)];
+		int top = 0;
+		if (size > 0) stack[top++] = 0;
+		while(top > 0) {
+			int p = stack[--top];
+			if (ratio[heap[p]] > bound) continue;
+			centers.add(heap[p]);
+			if (2 * p + 1 < size) stack[top++] = 2 * p + 1;
+			if (2 * p + 2 < size) stack[top++] = 2 * p + 2;
+		}
+		centers.sort((u, v) -> u.equals(v) ? 0 : less(u, v) ? -1 : 1);
+		return centers;
+	}
+
+	/**
+	 * Removes a center if it is in the heap
+	 * @param v star center
+	 */
+	public void remove(int v) {
+		if (!contains(v)) return;
+		int p = position[v];
+		position[v] = -1;
+		size--;
+		if (p == size) return;
+		int moved = heap[size];
+		heap[p] = moved;
+		position[moved] = p;
+		siftUp(p);
+		siftDown(position[moved]);
+	}
+
+	private void ensureCapacity(int v) {
+		if (v < position.length) return;
+		int capacity = Math.max(v + 1, 2 * position.length);
+		int old = position.length;
+		heap = Arrays.copyOf(heap, capacity);
+		position = Arrays.copyOf(position, capacity);
+		Arrays.fill(position, old, capacity, -1);
+		ratio = Arrays.copyOf(ratio, capacity);
+		starSize = Arrays.copyOf(starSize, capacity);
+	}
+
+	private boolean less(int u, int v) {
+		if (ratio[u] != ratio[v]) return ratio[u] < ratio[v];
+		if (starSize[u] != starSize[v]) return starSize[u] > starSize[v];
+		return u < v;
+	}
+
+	private void siftUp(int p) {
+		int v = heap[p];
+		while(p > 0) {
+			int parent = (p - 1) >>> 1;
+			if (!less(v, heap[parent])) break;
+			heap[p] = heap[parent];
+			position[heap[p]] = p;
+			p = parent;
+		}
+		heap[p] = v;
+		position[v] = p;
+	}
+
+	private void siftDown(int p) {
+		int v = heap[p];
+		while(true) {
+			int child = 2 * p + 1;
+			if (child >= size) break;
+			if (child + 1 < size && less(heap[child + 1], heap[child])) child++;
+			if (!less(heap[child], v)) break;
+			heap[p] = heap[child];
+			position[heap[p]] = p;
+			p = child;
+		}
+		heap[p] = v;
+		position[v] = p;
+	}
+}
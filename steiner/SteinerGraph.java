@@ -80,8 +80,8 @@ public class SteinerGraph {
                 vertexCount = v2 + 1;
             }
         }
-		vertices.get(v1).neighbours.add(v2);
-		vertices.get(v2).neighbours.add(v1);
+		mutableVertex(v1).neighbours.add(v2);
+		mutableVertex(v2).neighbours.add(v1);
 		edges.put(new SortedPair(v1, v2), e);
 		IDToEdge.put(edgeCount, e);
 		edgeCount++;
@@ -95,30 +95,93 @@ public class SteinerGraph {
 	 * @param v2 second endpoint
 	 * @param weight weight of the edge
 	 * @param id edge identifier
+	 * @return true if the edge was added or made lighter
 	 */
-	public void addEdge(Integer v1, Integer v2, Integer weight, List<Integer> id) {
-		if (v1.equals(v2)) return;
+	public boolean addEdge(Integer v1, Integer v2, Integer weight, List<Integer> id) {
+		if (v1.equals(v2)) return false;
+		boolean changed = true;
 		SortedPair p = new SortedPair(v1, v2);
 		SteinerGraphEdge e = new SteinerGraphEdge(v1, v2, weight, id);
 		if(!edges.containsKey(p)) {
-			vertices.get(v1).neighbours.add(v2);
-			vertices.get(v2).neighbours.add(v1);
+			mutableVertex(v1).neighbours.add(v2);
+			mutableVertex(v2).neighbours.add(v1);
 			edges.put(p, e);
 			edgeCount++;
 		}
 		else {
 			SteinerGraphEdge existingPath = edges.get(p);
 			if (weight < existingPath.getWeight()) {
-				edges.get(p).setWeight(weight);
-				edges.get(p).setID(id);
+				// The order of terminal edges depends on weight and identifier, so the edge is reinserted
+				removeTerminalEdge(v1, existingPath);
+				removeTerminalEdge(v2, existingPath);
+				existingPath = mutableEdge(p);
+				existingPath.setWeight(weight);
+				existingPath.setID(id);
 			}
+			else changed = false;
+			e = existingPath;
 		}
 		if(vertices.get(v2).isTerminal) {
-			vertices.get(v1).terminalneighbours.add(v2);
+			mutableVertex(v1).terminalneighbours.add(v2);
+			addTerminalEdge(v1, e);
 		}
 		if(vertices.get(v1).isTerminal) {
-			vertices.get(v2).terminalneighbours.add(v1);
+			mutableVertex(v2).terminalneighbours.add(v1);
+			addTerminalEdge(v2, e);
 		}
+		return changed;
+	}
+
+	/**
+	 * Collects the vertices on the paths represented by the edges of a star
+	 * @param starEdges list of edges of the star
+	 * @return vertices removed by contracting the star
+	 */
+	public Set<Integer> getStarVertices(List<SteinerGraphEdge> starEdges) {
+		Set<Integer> starVertices = new HashSet<Integer>();
+		for(SteinerGraphEdge starEdge : starEdges) {
+			for(Integer edgeID : starEdge.getID()) {
+				if (vertices.containsKey(IDToEdge.get(edgeID).getStart())) {
+					starVertices.add(IDToEdge.get(edgeID).getStart());
+				}
+				if (vertices.containsKey(IDToEdge.get(edgeID).getEnd())) {
+					starVertices.add(IDToEdge.get(edgeID).getEnd());
+				}
+			}
+		}
+		return starVertices;
+	}
+
+	/**
+	 * Contracts a star into a new terminal with identifier vertexCount. Every vertex on the paths
+	 * represented by the star edges is removed, its edges to the rest of the graph are moved to the new terminal.
+	 * @param starEdges list of edges of the star
+	 * @return the removed vertices
+	 */
+	public Set<Integer> contractStar(List<SteinerGraphEdge> starEdges) {
+		Set<Integer> starVertices = getStarVertices(starEdges);
+		vertices.put(vertexCount, new SteinerGraphVertex(vertexCount));
+		setTerminal(vertexCount);
+		for(SteinerGraphEdge starEdge : starEdges) {
+			steinerTreeEdges.addAll(starEdge.getID());
+		}
+		for(Integer starVertex : starVertices) {
+			for(Integer neighbour : vertices.get(starVertex).neighbours) {
+				if(!starVertices.contains(neighbour)) {
+					SteinerGraphEdge outEdge = edges.get(new SortedPair(starVertex, neighbour));
+					addEdge(vertexCount, neighbour, outEdge.getWeight(), outEdge.getID());
+					for(Integer i : outEdge.getID()) {
+						moveEndpoint(i, starVertex, vertexCount);
+					}
+				}
+			}
+		}
+
+		for(Integer starVertex : starVertices){
+			removeVertex(starVertex);
+		}
+		vertexCount++;
+		return starVertices;
 	}
 
 	/**
@@ -127,11 +190,15 @@ public class SteinerGraph {
 	 * @param v2 second endpoint
 	 */
 	public void removeEdge(Integer v1, Integer v2) {
-		edges.remove(new SortedPair(v1, v2));
-		vertices.get(v1).neighbours.remove(v2);			
-		vertices.get(v2).neighbours.remove(v1);
-		vertices.get(v1).terminalneighbours.remove(v2);			
-		vertices.get(v2).terminalneighbours.remove(v1);
+		SteinerGraphEdge e = edges.remove(new SortedPair(v1, v2));
+		if (e != null) {
+			removeTerminalEdge(v1, e);
+			removeTerminalEdge(v2, e);
+		}
+		mutableVertex(v1).neighbours.remove(v2);			
+		mutableVertex(v2).neighbours.remove(v1);
+		mutableVertex(v1).terminalneighbours.remove(v2);			
+		mutableVertex(v2).terminalneighbours.remove(v1);
 	}
 
 	/**
@@ -152,9 +219,10 @@ public class SteinerGraph {
 	 */
 	public void setTerminal(int t) {
 		terminals.add(t);
-		vertices.get(t).isTerminal = true;
+		mutableVertex(t).isTerminal = true;
 		for(int i : vertices.get(t).neighbours) {
-			vertices.get(i).terminalneighbours.add(t);
+			mutableVertex(i).terminalneighbours.add(t);
+			addTerminalEdge(i, edges.get(new SortedPair(i, t)));
 		}
 	}
 
@@ -165,9 +233,10 @@ public class SteinerGraph {
 	public void unTerminal(int t) {
 		if(vertices.get(t).isTerminal) {
 			terminals.remove(t);
-			vertices.get(t).isTerminal = false;
+			mutableVertex(t).isTerminal = false;
 			for(int i : vertices.get(t).neighbours) {
-				vertices.get(i).terminalneighbours.remove(t);
+				mutableVertex(i).terminalneighbours.remove(t);
+				removeTerminalEdge(i, edges.get(new SortedPair(i, t)));
 			}
 		}
 	}
@@ -175,24 +244,127 @@ public class SteinerGraph {
 	/**
 	 * Finds edges connecting to terminals from a given vertex
 	 * @param v common point of terminal edges
-	 * @return a list of terminal edges
+	 * @return a list of terminal edges sorted by weight, then by identifier
 	 */
 	public List<SteinerGraphEdge> getTerminalEdges(Integer v){
-		List<SteinerGraphEdge> neighbours = new ArrayList<>();
-		for(Integer i : vertices.get(v).terminalneighbours) {
-			neighbours.add(edges.get(new SortedPair(v, i)));
-		}
-		neighbours.sort(new Comparator<SteinerGraphEdge>() {
-			public int compare(SteinerGraphEdge e1, SteinerGraphEdge e2) {
-				if (e1.getWeight()-e2.getWeight()!=0) {
-					return e1.getWeight()-e2.getWeight();
-				}
-				return e1.getID().get(0)-e2.getID().get(0);
+		return new ArrayList<>(getSortedTerminalEdges(v));
+	}
+
+	/**
+	 * Terminal edges of a vertex in the order of getTerminalEdges. The ordered set is built on the first call
+	 * and then maintained by every modification of the graph in O(log d).
+	 * @param v common point of terminal edges
+	 * @return read-only view of the terminal edges
+	 */
+	public NavigableSet<SteinerGraphEdge> getSortedTerminalEdges(Integer v){
+		SteinerGraphVertex vertex = vertices.get(v);
+		if (vertex.terminalEdges == null) {
+			vertex = mutableVertex(v);
+			vertex.terminalEdges = new TreeSet<>(TERMINAL_EDGE_ORDER);
+			for(Integer i : vertex.terminalneighbours) {
+				vertex.terminalEdges.add(edges.get(new SortedPair(v, i)));
 			}
-		});
-		return neighbours;
+		}
+		return Collections.unmodifiableNavigableSet(vertex.terminalEdges);
 	}
 
+	private void addTerminalEdge(Integer v, SteinerGraphEdge e) {
+		if (vertices.get(v).terminalEdges != null) mutableVertex(v).terminalEdges.add(e);
+	}
+
+	private void removeTerminalEdge(Integer v, SteinerGraphEdge e) {
+		if (vertices.get(v).terminalEdges != null) mutableVertex(v).terminalEdges.remove(e);
+	}
+
+	/**
+	 * Moves an endpoint of an input edge, used when the endpoint is contracted into a new vertex
+	 * @param id identifier of the input edge
+	 * @param from endpoint to be replaced
+	 * @param to new endpoint
+	 */
+	public void moveEndpoint(Integer id, Integer from, Integer to) {
+		SteinerGraphEdge e = IDToEdge.get(id);
+		if (!e.getStart().equals(from) && !e.getEnd().equals(from)) return;
+		if (e.shared) {
+			e = new SteinerGraphEdge(e);
+			IDToEdge.put(id, e);
+		}
+		if (e.getStart().equals(from)) e.setStart(to);
+		if (e.getEnd().equals(from)) e.setEnd(to);
+	}
+
+	/**
+	 * Creates a snapshot of the graph. The maps referencing vertices and edges are copied, which takes
+	 * O(n+m), but the vertices and edges themselves are shared with this graph. Shared vertices and
+	 * edges are copied by whichever graph modifies them first, so the snapshot only ever holds its own
+	 * copies of what changed later.
+	 * @return snapshot of the current state
+	 */
+	public SteinerGraph snapshot() {
+		SteinerGraph snapshot = new SteinerGraph(inputPath);
+		snapshot.edgeCount = edgeCount;
+		snapshot.vertexCount = vertexCount;
+		snapshot.terminals.addAll(terminals);
+		snapshot.steinerTreeEdges.addAll(steinerTreeEdges);
+		for(SteinerGraphEdge e : IDToEdge.values()) {
+			e.shared = true;
+		}
+		for(SteinerGraphVertex v : vertices.values()) {
+			v.shared = true;
+		}
+		for(SteinerGraphEdge e : edges.values()) {
+			e.shared = true;
+		}
+		snapshot.IDToEdge.putAll(IDToEdge);
+		snapshot.vertices.putAll(vertices);
+		snapshot.edges.putAll(edges);
+		return snapshot;
+	}
+
+	/**
+	 * @param v vertex
+	 * @return the vertex, copied first if it is shared with a snapshot
+	 */
+	private SteinerGraphVertex mutableVertex(Integer v) {
+		SteinerGraphVertex vertex = vertices.get(v);
+		if (vertex.shared) {
+			SteinerGraphVertex copy = new SteinerGraphVertex(vertex);
+			if (vertex.terminalEdges != null) copy.terminalEdges = new TreeSet<>(vertex.terminalEdges);
+			vertices.put(v, copy);
+			vertex = copy;
+		}
+		return vertex;
+	}
+
+	/**
+	 * @param p endpoints of the edge
+	 * @return the edge, copied first if it is shared with a snapshot
+	 */
+	private SteinerGraphEdge mutableEdge(SortedPair p) {
+		SteinerGraphEdge e = edges.get(p);
+		if (e.shared) {
+			e = new SteinerGraphEdge(e);
+			edges.put(p, e);
+		}
+		return e;
+	}
+
+	/**
+	 * Orders terminal edges of a common vertex by weight, then by first identifier,
+	 * then by the endpoints so that distinct edges never compare equal
+	 */
+	private static final Comparator<SteinerGraphEdge> TERMINAL_EDGE_ORDER = new Comparator<SteinerGraphEdge>() {
+		public int compare(SteinerGraphEdge e1, SteinerGraphEdge e2) {
+			int c = Integer.compare(e1.getWeight(), e2.getWeight());
+			if (c != 0) return c;
+			c = Integer.compare(e1.getID().get(0), e2.getID().get(0));
+			if (c != 0) return c;
+			c = Integer.compare(Math.min(e1.getStart(), e1.getEnd()), Math.min(e2.getStart(), e2.getEnd()));
+			if (c != 0) return c;
+			return Integer.compare(Math.max(e1.getStart(), e1.getEnd()), Math.max(e2.getStart(), e2.getEnd()));
+		}
+	};
+
 	/**
 	 * @return Sum of all weights of edges in the Steiner tree
 	 */
@@ -1,6 +1,5 @@
 package steiner;
 
-import java.util.ArrayList;
 import java.util.List;
 
 /**
@@ -11,19 +10,20 @@ import java.util.List;
 public class SteinerGraphEdge {
     private Integer start;
     private Integer end;
-    private List<Integer> id;
+    private EdgePath id;
     private Integer weight;
+    /** Set when the edge is referenced by a snapshot, such an edge is copied before it is modified */
+    boolean shared;
 
     public SteinerGraphEdge(int i, int start, int end, int weight) {
-        this.id = new ArrayList<Integer>();
-        this.id.add(i);
+        this.id = EdgePath.of(i);
         this.start = start;
         this.end = end;
         this.weight = weight;
     }
 
     public SteinerGraphEdge(int start, int end, int weight, List<Integer> i) {
-        this.id = i;
+        this.id = EdgePath.of(i);
         this.start = start;
         this.end = end;
         this.weight = weight;
@@ -33,8 +33,7 @@ public class SteinerGraphEdge {
         start = parent.start;
         end = parent.end;
         weight = parent.weight;
-        id = new ArrayList<>();
-        id.addAll(parent.id);
+        id = parent.id;
     }
 
     public String toString() {
@@ -57,12 +56,15 @@ public class SteinerGraphEdge {
         end = e;
     }
 
-    public List<Integer> getID() {
+    /**
+     * @return identifiers of the input edges of the represented path, shared with other edges
+     */
+    public EdgePath getID() {
         return id;
     }
 
     public void setID(List<Integer> i) {
-        this.id = i;
+        this.id = EdgePath.of(i);
     }
 
     public Integer getWeight() {
@@ -10,12 +10,17 @@ public class SteinerGraphVertex {
 	public Integer id;
 	public Set<Integer> neighbours;
 	public Set<Integer> terminalneighbours;
+	/** Edges to terminal neighbours in the order of getTerminalEdges, built on first use and kept up to date by SteinerGraph */
+	public TreeSet<SteinerGraphEdge> terminalEdges;
 	public boolean isTerminal;
+	/** Set when the vertex is referenced by a snapshot, such a vertex is copied before it is modified */
+	boolean shared;
 	
 	public SteinerGraphVertex(int i) {
 		id = i;
 		neighbours = new HashSet<>();
 		terminalneighbours = new HashSet<>();
+		terminalEdges = null;
 		isTerminal = false;
 	}
 	
@@ -29,6 +34,7 @@ public class SteinerGraphVertex {
 		for(Integer i : parent.terminalneighbours) {
 			terminalneighbours.add(i);
 		}
+		terminalEdges = null;
 		isTerminal = parent.isTerminal;
 	}
 }
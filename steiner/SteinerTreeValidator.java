@@ -1,13 +1,10 @@
 package steiner;
 
 import java.util.ArrayList;
-import java.util.HashMap;
 import java.util.List;
-import java.util.Map;
-import java.util.Stack;
 
 /**
- * Confirms Steiner tree validity by running DFS
+ * Confirms Steiner tree validity by running DFS on a compact view of the tree
  */
 public class SteinerTreeValidator {
 
@@ -19,57 +16,58 @@ public class SteinerTreeValidator {
 	 * @param steinerGraph tree to validate
 	 */
 	public boolean validate(SteinerGraph steinerGraph) {
-		Stack<Integer> stack = new Stack<Integer>();
-		Map<Integer, Boolean> visited = new HashMap<Integer, Boolean>();
-		Map<Integer, Integer> parent = new HashMap<Integer, Integer>();
-		for(Integer v : steinerGraph.vertices.keySet()) {
-			visited.put(v, false);
-		}
+		CSRGraph graph = new CSRGraph(steinerGraph);
+		int n = graph.size();
+		boolean[] visited = new boolean[n];
+		boolean[] onStack = new boolean[n];
+		int[] parent = new int[n];
+		int[] stack = new int[n];
+		int top = 0;
 		for(Integer i : steinerGraph.terminals) {
-			stack.push(i);
-			parent.put(i, -1);
+			int root = graph.getIndex(i);
+			stack[top++] = root;
+			onStack[root] = true;
+			parent[root] = -1;
 			break;
 		}
-		while(!stack.isEmpty()) {
-			Integer v = stack.pop();
-			visited.put(v, true);
-			for(Integer w : steinerGraph.vertices.get(v).neighbours) {
-				if(visited.get(w)) {
-					if (!parent.get(v).equals(w)) {
+		while(top > 0) {
+			int v = stack[--top];
+			onStack[v] = false;
+			visited[v] = true;
+			for(int k = graph.start(v); k < graph.end(v); k++) {
+				int w = graph.target(k);
+				if(visited[w]) {
+					if (parent[v] != w) {
 						List<Integer> path1 = new ArrayList<Integer>();
-						Integer i = v;
-						while(i!=-1) {
-							path1.add(0, i);
-							i = parent.get(i);
+						for(int i = v; i != -1; i = parent[i]) {
+							path1.add(0, graph.getVertex(i));
 						}
 						List<Integer> path2 = new ArrayList<Integer>();
-						Integer j = w;
-						while(j!=-1) {
-							path2.add(0, j);
-							j = parent.get(j);
+						for(int j = w; j != -1; j = parent[j]) {
+							path2.add(0, graph.getVertex(j));
 						}
-						path1.add(w);
+						path1.add(graph.getVertex(w));
 						System.out.println(steinerGraph.inputPath + " Error - Steiner tree has a cycle:");
 						System.out.println(path1);
 						System.out.println(path2);
 						return false;
 					}
 				}
-				else if (!stack.contains(w)) {
-					stack.push(w);
-					parent.put(w, v);
+				else if (!onStack[w]) {
+					stack[top++] = w;
+					onStack[w] = true;
+					parent[w] = v;
 				}
-
 			}
 		}
 		for(Integer i : steinerGraph.vertices.keySet()) {
-			if (!visited.get(i)) {
+			if (!visited[graph.getIndex(i)]) {
 				System.out.println(steinerGraph.inputPath + " Error - Steiner tree is disconnected: Vertex " + i + " was not visited");
 				return false;
 			}
 		}
 		for(Integer terminal : steinerGraph.terminals) {
-			if(!visited.get(terminal)) {
+			if(!visited[graph.getIndex(terminal)]) {
 				System.out.println(steinerGraph.inputPath + " Error - Steiner tree does not cover terminal " + terminal);
 				return false;
 			}
@@ -0,0 +1,163 @@
+package steiner;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * FPT algorithm solving Steiner Tree problem parameterized by the number of Steiner vertices.
+ * Every optimal tree is a minimum spanning tree in the metric closure on the terminals and its
+ * Steiner vertices of degree at least 3, of which there are at most |T|-2. All such sets of
+ * Steiner vertices are enumerated, spanning trees heavier than the best one found are abandoned early.
+ */
+public class SteinerVertexEnumeration extends ExactSolver {
+
+	private DistanceOracle dist;
+	private int[] points;
+	private int terminalCount;
+	private int[] candidates;
+	private int[] chosen;
+	private int[] bestPoints;
+	private int best;
+
+	/**
+	 * The enumeration builds a spanning tree on |T|+k points for each of the C(s,k) sets of k <= |T|-2
+	 * Steiner vertices, while Dreyfus-Wagner combines 3^|T| pairs of terminal subsets in each of the n vertices
+	 * @param steinerVertices number of Steiner vertices s of the instance
+	 * @param terminals number of terminals |T| of the instance
+	 * @return true if the enumeration is expected to be faster
+	 */
+	public static boolean preferEnumeration(int steinerVertices, int terminals) {
+		double dreyfusWagner = Math.pow(3, terminals) * (steinerVertices + terminals);
+		double enumeration = 0;
+		double sets = 1;
+		for(int k = 0; k <= Math.min(steinerVertices, terminals - 2); k++) {
+			enumeration += sets * (terminals + k) * (terminals + k);
+			if (enumeration > dreyfusWagner) return false;
+			sets = sets * (steinerVertices - k) / (k + 1);
+		}
+		return true;
+	}
+
+	public String getName() {
+		return "Steiner vertex enumeration";
+	}
+
+	/**
+	 * Computes the exact Steiner tree by enumerating sets of Steiner vertices
+	 * @param steinerGraph compact instance to be solved
+	 */
+	protected void solveCompact(SteinerGraph steinerGraph) {
+		List<Integer> terminals = new ArrayList<Integer>(steinerGraph.terminals);
+		terminalCount = terminals.size();
+		prunedStates = 0;
+		if (terminalCount < 2) {
+			optimalTreeWeight = 0;
+			steinerEdges = new ArrayList<>();
+			return;
+		}
+
+		// A Steiner vertex of degree at most 2 can be shortcut in the metric closure
+		List<Integer> useful = new ArrayList<Integer>();
+		for(SteinerGraphVertex v : steinerGraph.vertices.values()) {
+			if (!v.isTerminal && v.neighbours.size() >= 3) useful.add(v.id);
+		}
+		List<Integer> sources = new ArrayList<Integer>(terminals);
+		sources.addAll(useful);
+		dist = new DistanceOracle(steinerGraph, sources);
+
+		candidates = new int[useful.size()];
+		for(int i = 0; i < useful.size(); i++) {
+			candidates[i] = useful.get(i);
+		}
+		int maxSteinerVertices = Math.min(candidates.length, terminalCount - 2);
+		points = new int[terminalCount + maxSteinerVertices];
+		for(int i = 0; i < terminalCount; i++) {
+			points[i] = terminals.get(i);
+		}
+		chosen = new int[maxSteinerVertices];
+		best = DistanceOracle.INFINITY;
+		bestPoints = null;
+		enumerate(0, 0);
+		optimalTreeWeight = best;
+
+		// Expand the edges of the best spanning tree into shortest paths
+		Set<Integer> edgeIDs = new HashSet<Integer>();
+		if (bestPoints != null) {
+			int[] parent = spanningTree(bestPoints, bestPoints.length, Long.MAX_VALUE);
+			for(int i = 1; i < bestPoints.length; i++) {
+				edgeIDs.addAll(dist.getPathIDs(bestPoints[parent[i]], bestPoints[i]));
+			}
+		}
+		steinerEdges = new ArrayList<>(edgeIDs);
+		Collections.sort(steinerEdges);
+	}
+
+	/**
+	 * Enumerates the sets of candidates with indices from the given one onward
+	 * @param from first candidate that may be added
+	 * @param size number of candidates chosen so far
+	 */
+	private void enumerate(int from, int size) {
+		for(int i = 0; i < size; i++) {
+			points[terminalCount + i] = candidates[chosen[i]];
+		}
+		int count = terminalCount + size;
+		long limit = Math.min((long) best - 1, upperBound);
+		int[] parent = spanningTree(points, count, limit);
+		if (parent == null) prunedStates++;
+		else {
+			int weight = 0;
+			for(int i = 1; i < count; i++) {
+				weight += dist.getDistance(points[parent[i]], points[i]);
+			}
+			if (weight < best) {
+				best = weight;
+				bestPoints = Arrays.copyOf(points, count);
+			}
+		}
+		if (size == chosen.length) return;
+		for(int c = from; c < candidates.length; c++) {
+			chosen[size] = c;
+			enumerate(c + 1, size + 1);
+		}
+	}
+
+	/**
+	 * Prim's algorithm in the metric closure on the first count points
+	 * @param points vertices of the closure, all of them have distance rows
+	 * @param count number of points used
+	 * @param limit the tree is abandoned as soon as its weight exceeds the limit
+	 * @return parent index of every point in the tree, null if the limit was exceeded or the points are not connected
+	 */
+	private int[] spanningTree(int[] points, int count, long limit) {
+		int[] key = new int[count];
+		int[] parent = new int[count];
+		boolean[] inTree = new boolean[count];
+		Arrays.fill(key, DistanceOracle.INFINITY);
+		key[0] = 0;
+		long weight = 0;
+		for(int step = 0; step < count; step++) {
+			int next = -1;
+			for(int i = 0; i < count; i++) {
+				if (!inTree[i] && (next == -1 || key[i] < key[next])) next = i;
+			}
+			if (key[next] == DistanceOracle.INFINITY) return null;
+			weight += key[next];
+			if (weight > limit) return null;
+			inTree[next] = true;
+			for(int i = 0; i < count; i++) {
+				if (inTree[i]) continue;
+				int d = dist.getDistance(points[next], points[i]);
+				if (d < key[i]) {
+					key[i] = d;
+					parent[i] = next;
+				}
+			}
+		}
+		return parent;
+	}
+}
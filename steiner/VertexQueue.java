@@ -0,0 +1,33 @@
+package steiner;
+
+/**
+ * Priority queue of vertices 0..capacity-1 with integer keys and decrease-key, as used by the closure searches.
+ * Among vertices with equal keys the smaller one is returned first.
+ */
+public interface VertexQueue {
+
+	boolean isEmpty();
+
+	/**
+	 * Inserts a vertex or decreases the key of a vertex already in the queue
+	 * @param i vertex
+	 * @param k new key
+	 */
+	void push(int i, int k);
+
+	/**
+	 * @return smallest key in the queue
+	 */
+	int peekKey();
+
+	/**
+	 * Removes the vertex with the smallest key
+	 * @return the removed vertex
+	 */
+	int poll();
+
+	/**
+	 * Removes every vertex
+	 */
+	void clear();
+}